@@ -0,0 +1,64 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Event bus payloads of the rendered instance views of the corpus: the view sent as a JSON object, which the local
+ * event bus copies, against the typed view passed as is by the local codec, and the typed view on a clustered wire.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private List<InstanceView> views;
+
+    @Setup
+    public void setup() {
+        ProcessDiagram diagram = ProcessDiagram.load(InstanceCorpus.PROCESS_ID, InstanceCorpus.diagram());
+        views = InstanceCorpus.load().views();
+        views.replaceAll(view -> view.withImage(diagram.render(view.history().completed(), view.history().active())));
+    }
+
+    @Benchmark
+    public void jsonLocal(Blackhole bh) {
+        for (InstanceView view : views) {
+            JsonObject json = view.toJson().copy();
+            bh.consume(InstanceView.fromJson(json));
+        }
+    }
+
+    @Benchmark
+    public void typedLocal(Blackhole bh) {
+        for (InstanceView view : views) {
+            bh.consume(InstanceView.CODEC.transform(view));
+        }
+    }
+
+    @Benchmark
+    public void typedWire(Blackhole bh) {
+        for (InstanceView view : views) {
+            Buffer buffer = Buffer.buffer();
+            InstanceView.CODEC.encodeToWire(buffer, view);
+            bh.consume(InstanceView.CODEC.decodeFromWire(0, buffer));
+        }
+    }
+}
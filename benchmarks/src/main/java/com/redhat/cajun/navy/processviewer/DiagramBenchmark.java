@@ -0,0 +1,82 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.json.JsonArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Rendering of the instance diagrams of the corpus: folding the node log into active and completed nodes, and
+ * rendering the diagram by splicing the indexed template or with the jBPM SVG processor and the embedding fixups.
+ * Each operation covers the whole corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiagramBenchmark {
+
+    private byte[] svg;
+
+    private String document;
+
+    private ProcessDiagram diagram;
+
+    private List<JsonArray> nodeLogs;
+
+    private NodeHistory[] histories;
+
+    @Setup
+    public void setup() {
+        svg = InstanceCorpus.diagram();
+        document = new String(svg, StandardCharsets.UTF_8);
+        diagram = ProcessDiagram.load(InstanceCorpus.PROCESS_ID, svg);
+        nodeLogs = InstanceCorpus.load().nodeLogs();
+        histories = nodeLogs.stream().map(InstanceCorpus::history).toArray(NodeHistory[]::new);
+    }
+
+    @Benchmark
+    public void fold(Blackhole bh) {
+        for (JsonArray rows : nodeLogs) {
+            bh.consume(InstanceCorpus.history(rows));
+        }
+    }
+
+    @Benchmark
+    public void render(Blackhole bh) {
+        for (NodeHistory history : histories) {
+            bh.consume(diagram.render(history.completed(), history.active()));
+        }
+    }
+
+    @Benchmark
+    public void transform(Blackhole bh) {
+        for (NodeHistory history : histories) {
+            bh.consume(diagram.transform(history.completed(), history.active()));
+        }
+    }
+
+    @Benchmark
+    public String fixup() {
+        return ProcessDiagram.fixup(document);
+    }
+
+    @Benchmark
+    public ProcessDiagram load() {
+        return ProcessDiagram.load(InstanceCorpus.PROCESS_ID, svg);
+    }
+}
@@ -0,0 +1,83 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Fixed synthetic corpus of <code>incident-process</code> instances, with the node log rows and variables as read from
+ * the database, shared by the benchmarks so that their results can be compared between runs.
+ *
+ * The corpus was generated once with a fixed seed from the node ids of the process diagram: 24 instances of 4 to 31
+ * nodes, with assignment retry loops, a few aborted nodes, and one completed instance in four.
+ */
+final class InstanceCorpus {
+
+    static final String PROCESS_ID = "incident-process";
+
+    private final List<JsonObject> instances = new ArrayList<>();
+
+    private InstanceCorpus() {
+    }
+
+    static InstanceCorpus load() {
+        InstanceCorpus corpus = new InstanceCorpus();
+        new JsonArray(resource("instance-histories.json")).forEach(o -> corpus.instances.add((JsonObject) o));
+        return corpus;
+    }
+
+    static byte[] diagram() {
+        return resource(PROCESS_ID + "-svg.svg").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Node log rows of each instance in id order, as <code>[nodeinstanceid, nodeid, type, log_date]</code>.
+     */
+    List<JsonArray> nodeLogs() {
+        List<JsonArray> logs = new ArrayList<>();
+        instances.forEach(instance -> logs.add(instance.getJsonArray("nodeinstancelog")));
+        return logs;
+    }
+
+    List<InstanceView> views() {
+        List<InstanceView> views = new ArrayList<>();
+        instances.forEach(instance -> views.add(InstanceView.of(
+                ProcessInstance.fromJson(new JsonObject()
+                        .put("processinstanceid", instance.getLong("processInstanceId"))
+                        .put("correlationkey", instance.getString("correlationKey"))
+                        .put("processid", instance.getString("processId"))
+                        .put("status", instance.getInteger("status"))
+                        .put("start_date", instance.getString("startDate"))
+                        .put("end_date", instance.getString("endDate"))
+                        .put("duration", instance.getLong("duration"))),
+                history(instance.getJsonArray("nodeinstancelog")),
+                ProcessVariables.fromJson(instance.getJsonObject("variables")))));
+        return views;
+    }
+
+    static NodeHistory history(JsonArray rows) {
+        NodeHistory history = new NodeHistory();
+        for (int i = 0; i < rows.size(); i++) {
+            JsonArray row = rows.getJsonArray(i);
+            history.add(row.getString(0), row.getString(1), row.getInteger(2), row.getString(3));
+        }
+        return history;
+    }
+
+    private static String resource(String name) {
+        try (InputStream is = InstanceCorpus.class.getClassLoader().getResourceAsStream(name)) {
+            if (is == null) {
+                throw new IllegalStateException("Missing benchmark resource " + name);
+            }
+            return IOUtils.toString(is, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read benchmark resource " + name, e);
+        }
+    }
+}
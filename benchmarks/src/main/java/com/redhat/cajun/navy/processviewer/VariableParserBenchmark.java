@@ -0,0 +1,93 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Extraction of the data page fields from the mission and incident variables and the process instance dates:
+ * the regular expression and formatter based extraction the data page used to do, against {@link VariableParser}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariableParserBenchmark {
+
+    private static final String MISSION = "Mission [id=4f9a2c1e-5b7d-4e8f-9a3b-2c1d0e9f8a7b, incidentId=9e8d7c6b-5a4f-4e3d-8c2b-1a0f9e8d7c6b, "
+            + "responderId=127, responderStartLat=34.16877, responderStartLong=-77.87465, incidentLat=34.21242, incidentLong=-77.83287, "
+            + "destinationLat=34.1706, destinationLong=-77.949, responderLocationHistory=[ResponderLocationHistory [lat=34.1701, lon=-77.9482, "
+            + "timestamp=1556712000000], ResponderLocationHistory [lat=34.1755, lon=-77.9371, timestamp=1556712010000]], "
+            + "responderLat=34.1755, responderLong=-77.9371, status=UPDATED, steps=[MissionStep [lat=34.1701, lon=-77.9482, wayPoint=false, "
+            + "destination=false], MissionStep [lat=34.21242, lon=-77.83287, wayPoint=true, destination=false]]]";
+
+    private static final String INCIDENT = "Incident [id=9e8d7c6b-5a4f-4e3d-8c2b-1a0f9e8d7c6b, latitude=34.21242, longitude=-77.83287, "
+            + "numberOfPeople=3, medicalNeeded=true, victimName=Jane Doe, victimPhoneNumber=(123) 456-7890, timestamp=1556711990000, status=ASSIGNED]";
+
+    private static final String START_DATE = "2019-05-01T11:59:50.123Z";
+
+    private static final String END_DATE = "2019-05-01T12:03:20.5Z";
+
+    private final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+
+    private final DateTimeFormatter dtf2 = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.S'Z'");
+
+    @Benchmark
+    public void regex(Blackhole bh) {
+        DateTimeFormatter out = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        bh.consume(out.format(LocalDateTime.from(parse(START_DATE))));
+        bh.consume(out.format(LocalDateTime.from(parse(END_DATE))));
+        bh.consume(match(".*responderId=([0-9]*),", MISSION));
+        bh.consume(coordinates(".*latitude=([-+]?[0-9.]*),", ".*longitude=([-+]?[0-9.]*),", INCIDENT));
+        bh.consume(coordinates(".*responderLat=([-+]?[0-9.]*),", ".*responderLong=([-+]?[0-9.]*),", MISSION));
+        bh.consume(coordinates(".*destinationLat=([-+]?[0-9.]*),", ".*destinationLong=([-+]?[0-9.]*),", MISSION));
+    }
+
+    @Benchmark
+    public void singlePass(Blackhole bh) {
+        bh.consume(VariableParser.formatDate(START_DATE));
+        bh.consume(VariableParser.formatDate(END_DATE));
+        VariableParser.Mission mission = VariableParser.mission(MISSION);
+        VariableParser.Incident incident = VariableParser.incident(INCIDENT);
+        bh.consume(mission.responderId());
+        bh.consume(incident.location());
+        bh.consume(mission.responderLocation());
+        bh.consume(mission.destinationLocation());
+    }
+
+    private static String match(String pattern, String text) {
+        Matcher matcher = Pattern.compile(pattern).matcher(text);
+        return matcher.find() ? matcher.group(1) : "";
+    }
+
+    private static String coordinates(String patternLat, String patternLon, String text) {
+        String lat = match(patternLat, text);
+        String lon = match(patternLon, text);
+        return lat.isEmpty() || lon.isEmpty() ? "" : lat + "," + lon;
+    }
+
+    private TemporalAccessor parse(String date) {
+        try {
+            return dtf.parse(date);
+        } catch (DateTimeParseException e) {
+            return dtf2.parse(date);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.ext.web.codec.BodyCodec;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Closed-loop HTTP load driver: a fixed number of concurrent users each send their next request as soon as the
+ * previous response has been read, choosing the endpoint by the weights of the request mix.
+ *
+ * Users are spread over one HTTP client per event loop; each client records response times per endpoint in its own
+ * histograms, which are merged for the report. Responses of the warm-up period are not recorded.
+ */
+class LoadDriver {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadDriver.class);
+
+    enum Endpoint {
+        DATA, IMAGE, OVERLAY, DIAGRAM, HEATMAP, BULK, LIST, RANGE
+    }
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Vertx vertx;
+
+    private final String host;
+
+    private final int port;
+
+    private final int instances;
+
+    private final Map<Endpoint, Integer> mix;
+
+    private final int totalWeight;
+
+    LoadDriver(Vertx vertx, String host, int port, int instances, Map<Endpoint, Integer> mix) {
+        this.vertx = vertx;
+        this.host = host;
+        this.port = port;
+        this.instances = instances;
+        this.mix = mix;
+        this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Parses a request mix such as <code>data=50,image=20,overlay=20,bulk=5,list=3,range=2</code>.
+     */
+    static Map<Endpoint, Integer> mix(String mix) {
+        Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+        for (String entry : mix.split(",")) {
+            String[] weight = entry.trim().split("=");
+            weights.put(Endpoint.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+        }
+        return weights;
+    }
+
+    Report run(int concurrency, long warmupSeconds, long durationSeconds) throws InterruptedException {
+        int clients = Math.min(concurrency, Runtime.getRuntime().availableProcessors());
+        List<Client> running = new ArrayList<>();
+        long start = System.nanoTime();
+        long recordFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long until = recordFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        CountDownLatch done = new CountDownLatch(concurrency);
+        for (int i = 0; i < clients; i++) {
+            running.add(new Client(concurrency / clients + (i < concurrency % clients ? 1 : 0), recordFrom, until, done));
+        }
+        running.forEach(Client::start);
+        done.await();
+        Report report = new Report(TimeUnit.NANOSECONDS.toSeconds(until - recordFrom));
+        running.forEach(client -> {
+            client.histograms.forEach(report::add);
+            client.errors.forEach((endpoint, count) -> report.errors.computeIfAbsent(endpoint, e -> new AtomicLong()).addAndGet(count.get()));
+            client.http.close();
+        });
+        return report;
+    }
+
+    private Endpoint next() {
+        int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Map.Entry<Endpoint, Integer> weight : mix.entrySet()) {
+            pick -= weight.getValue();
+            if (pick < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty request mix");
+    }
+
+    private String key() {
+        return LogGenerator.correlationKey(1 + ThreadLocalRandom.current().nextInt(instances));
+    }
+
+    /**
+     * Start date of the first listed instance outside the range, if any.
+     */
+    private static String outOfRange(String listing, Instant from, Instant to) {
+        if (listing == null) {
+            return null;
+        }
+        for (String line : listing.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String startDate = new JsonObject(line).getString("startDate");
+            Instant started = Instant.parse(startDate);
+            if (started.isBefore(from) || !started.isBefore(to)) {
+                return "start date " + startDate + " outside of " + from + " - " + to;
+            }
+        }
+        return null;
+    }
+
+    private class Client {
+
+        private final WebClient http;
+
+        private final int users;
+
+        private final long recordFrom;
+
+        private final long until;
+
+        private final CountDownLatch done;
+
+        private final Map<Endpoint, Histogram> histograms = new EnumMap<>(Endpoint.class);
+
+        private final Map<Endpoint, AtomicLong> errors = new EnumMap<>(Endpoint.class);
+
+        private final Set<Endpoint> logged = EnumSet.noneOf(Endpoint.class);
+
+        Client(int users, long recordFrom, long until, CountDownLatch done) {
+            this.http = WebClient.create(vertx, new WebClientOptions()
+                    .setDefaultHost(host)
+                    .setDefaultPort(port)
+                    .setMaxPoolSize(Math.max(users, 1))
+                    .setKeepAlive(true));
+            this.users = users;
+            this.recordFrom = recordFrom;
+            this.until = until;
+            this.done = done;
+            for (Endpoint endpoint : Endpoint.values()) {
+                histograms.put(endpoint, new Histogram(HIGHEST_TRACKABLE_NANOS, 3));
+                errors.put(endpoint, new AtomicLong());
+            }
+        }
+
+        void start() {
+            // a context of its own per client, so that each client runs on another event loop
+            vertx.getOrCreateContext().runOnContext(v -> {
+                for (int i = 0; i < users; i++) {
+                    send();
+                }
+            });
+        }
+
+        private void send() {
+            if (System.nanoTime() >= until) {
+                done.countDown();
+                return;
+            }
+            Endpoint endpoint = next();
+            long sent = System.nanoTime();
+            if (endpoint == Endpoint.RANGE) {
+                sendRange(sent);
+                return;
+            }
+            Handler<AsyncResult<HttpResponse<Void>>> handler = ar -> completed(endpoint, sent, ar.failed() ? ar.cause().toString()
+                    : ar.result().statusCode() >= 400 ? "status " + ar.result().statusCode() : null);
+            HttpRequest<Void> request = request(endpoint);
+            if (endpoint == Endpoint.BULK) {
+                JsonArray keys = new JsonArray();
+                for (int i = 0; i < 50; i++) {
+                    keys.add(key());
+                }
+                request.sendJson(keys, handler);
+            } else {
+                request.send(handler);
+            }
+        }
+
+        private void completed(Endpoint endpoint, long sent, String failure) {
+            if (failure != null) {
+                failed(endpoint, failure);
+            }
+            record(endpoint, sent, failure == null);
+            send();
+        }
+
+        /**
+         * Lists the instances started within an hour of generated instances, which start a minute apart, and checks
+         * that every instance listed started within it. The bounds are sent in UTC or with another offset, so that a
+         * filter compared in another time zone than the listed dates fails the check.
+         */
+        private void sendRange(long sent) {
+            Instant from = LogGenerator.START.atZone(ZoneId.systemDefault()).toInstant()
+                    .plus(ThreadLocalRandom.current().nextInt(instances), ChronoUnit.MINUTES);
+            Instant to = from.plus(1, ChronoUnit.HOURS);
+            ZoneOffset offset = ThreadLocalRandom.current().nextBoolean() ? ZoneOffset.UTC : ZoneOffset.ofHours(2);
+            http.get("/process/instances")
+                    .addQueryParam("startedFrom", from.atOffset(offset).toString())
+                    .addQueryParam("startedTo", to.atOffset(offset).toString())
+                    .as(BodyCodec.string())
+                    .send(ar -> completed(Endpoint.RANGE, sent, ar.failed() ? ar.cause().toString()
+                            : ar.result().statusCode() >= 400 ? "status " + ar.result().statusCode()
+                            : outOfRange(ar.result().body(), from, to)));
+        }
+
+        /**
+         * Request whose response body is read and discarded.
+         */
+        private HttpRequest<Void> request(Endpoint endpoint) {
+            return http.request(method(endpoint), uri(endpoint)).as(BodyCodec.none());
+        }
+
+        private HttpMethod method(Endpoint endpoint) {
+            return endpoint == Endpoint.BULK ? HttpMethod.POST : HttpMethod.GET;
+        }
+
+        private String uri(Endpoint endpoint) {
+            switch (endpoint) {
+                case DATA:
+                    return "/data/process/instance/" + key();
+                case IMAGE:
+                    return "/image/process/instance/" + key();
+                case OVERLAY:
+                    return "/overlay/process/instance/" + key();
+                case DIAGRAM:
+                    return "/image/process/" + LogGenerator.PROCESS_ID;
+                case HEATMAP:
+                    return "/heatmap/process/" + LogGenerator.PROCESS_ID;
+                case BULK:
+                    return "/data/process/instances";
+                case LIST:
+                    return "/process/instances?status=active&limit=500&after="
+                            + ThreadLocalRandom.current().nextInt(instances);
+                default:
+                    throw new IllegalArgumentException("Unknown endpoint " + endpoint);
+            }
+        }
+
+        private void failed(Endpoint endpoint, String reason) {
+            if (logged.add(endpoint)) {
+                log.warn("First {} request failure: {}", endpoint.name().toLowerCase(), reason);
+            }
+        }
+
+        private void record(Endpoint endpoint, long sent, boolean ok) {
+            long received = System.nanoTime();
+            if (sent < recordFrom || received > until) {
+                return;
+            }
+            if (ok) {
+                histograms.get(endpoint).recordValue(Math.min(received - sent, HIGHEST_TRACKABLE_NANOS));
+            } else {
+                errors.get(endpoint).incrementAndGet();
+            }
+        }
+    }
+
+    static class Report {
+
+        private final long seconds;
+
+        private final Map<Endpoint, Histogram> histograms = new EnumMap<>(Endpoint.class);
+
+        private final Map<Endpoint, AtomicLong> errors = new EnumMap<>(Endpoint.class);
+
+        Report(long seconds) {
+            this.seconds = seconds;
+        }
+
+        void add(Endpoint endpoint, Histogram histogram) {
+            histograms.computeIfAbsent(endpoint, e -> new Histogram(HIGHEST_TRACKABLE_NANOS, 3)).add(histogram);
+        }
+
+        String format() {
+            StringBuilder sb = new StringBuilder(String.format("%-8s %10s %10s %8s %10s %10s %10s %10s%n",
+                    "endpoint", "requests", "req/s", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+            Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+            long totalErrors = 0;
+            for (Map.Entry<Endpoint, Histogram> entry : histograms.entrySet()) {
+                Histogram histogram = entry.getValue();
+                long errorCount = errors.getOrDefault(entry.getKey(), new AtomicLong()).get();
+                if (histogram.getTotalCount() == 0 && errorCount == 0) {
+                    continue;
+                }
+                total.add(histogram);
+                totalErrors += errorCount;
+                line(sb, entry.getKey().name().toLowerCase(), histogram, errorCount);
+            }
+            line(sb, "all", total, totalErrors);
+            return sb.toString();
+        }
+
+        private void line(StringBuilder sb, String name, Histogram histogram, long errorCount) {
+            sb.append(String.format("%-8s %10d %10.1f %8d %10.2f %10.2f %10.2f %10.2f%n", name,
+                    histogram.getTotalCount(), (double) histogram.getTotalCount() / Math.max(seconds, 1), errorCount,
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue())));
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * End-to-end load test: generates the audit logs of a number of process instances in PostgreSQL, starts the process
+ * viewer against them and drives a request mix through its HTTP API, reporting throughput and latency percentiles
+ * per endpoint.
+ *
+ * Options are passed as <code>--name=value</code>, see {@link #usage()}. Without <code>--jdbcUrl</code> an embedded
+ * PostgreSQL is started, without <code>--target</code> the viewer is deployed in this JVM.
+ */
+public class LoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTest.class);
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        if (options.containsKey("help")) {
+            System.out.println(usage());
+            return;
+        }
+        int instances = Integer.parseInt(options.getOrDefault("instances", "10000"));
+        String user = options.getOrDefault("user", "postgres");
+        String password = options.getOrDefault("password", "postgres");
+
+        EmbeddedPostgres postgres = null;
+        String jdbcUrl = options.get("jdbcUrl");
+        if (jdbcUrl == null) {
+            postgres = EmbeddedPostgres.builder().start();
+            jdbcUrl = postgres.getJdbcUrl(user, "postgres");
+            log.info("Started embedded PostgreSQL at {}", jdbcUrl);
+        }
+        if (postgres != null || Boolean.parseBoolean(options.getOrDefault("generate", "false"))) {
+            new LogGenerator(jdbcUrl, user, password, instances,
+                    Long.parseLong(options.getOrDefault("seed", "1")),
+                    Double.parseDouble(options.getOrDefault("retryRate", "0.1")),
+                    Double.parseDouble(options.getOrDefault("activeRate", "0.2")),
+                    Double.parseDouble(options.getOrDefault("abortRate", "0.05"))).generate();
+        }
+
+        Vertx vertx = Vertx.vertx();
+        try {
+            String host = "localhost";
+            int port = Integer.parseInt(options.getOrDefault("port", "8080"));
+            String target = options.get("target");
+            if (target == null) {
+                deploy(vertx, config(options, jdbcUrl, user, password, port));
+            } else {
+                String[] hostPort = target.replaceFirst("^https?://", "").split(":");
+                host = hostPort[0];
+                port = hostPort.length > 1 ? Integer.parseInt(hostPort[1].replaceAll("/.*", "")) : 80;
+            }
+            LoadDriver driver = new LoadDriver(vertx, host, port, instances,
+                    LoadDriver.mix(options.getOrDefault("mix", "data=50,image=20,overlay=20,diagram=2,heatmap=2,bulk=3,list=2,range=1")));
+            int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+            long warmup = Long.parseLong(options.getOrDefault("warmup", "10"));
+            long duration = Long.parseLong(options.getOrDefault("duration", "60"));
+            log.info("Running {} users against {}:{} for {} s after a {} s warm-up", concurrency, host, port, duration, warmup);
+            System.out.print(driver.run(concurrency, warmup, duration).format());
+        } finally {
+            CompletableFuture<Void> closed = new CompletableFuture<>();
+            vertx.close(ar -> closed.complete(null));
+            closed.get();
+            if (postgres != null) {
+                postgres.close();
+            }
+        }
+    }
+
+    /**
+     * Configuration of an in-process viewer, written as JSON (which the YAML config store reads as well).
+     */
+    private static JsonObject config(Map<String, String> options, String jdbcUrl, String user, String password, int port) throws Exception {
+        Path store = Files.createTempDirectory("process-viewer-loadtest").resolve("finalized-views.seg");
+        String backend = options.getOrDefault("backend", "jdbc");
+        return new JsonObject()
+                .put("http", new JsonObject()
+                        .put("port", port)
+                        .put("instances", 2)
+                        .put("cacheSize", 500)
+                        .put("retryAfter", 1)
+                        .put("diagramMaxAge", 86400)
+                        .put("sseHeartbeat", 15000)
+                        .put("bulkMaxKeys", 200)
+                        .put("listPageSize", 500))
+                .put("image", new JsonObject()
+                        .put("instances", 2)
+                        .put("cacheSize", 500)
+                        .put("preload", new JsonArray().add(LogGenerator.PROCESS_ID))
+                        .put("render", new JsonObject().put("poolSize", 4).put("maxQueue", 64))
+                        .put("store", new JsonObject().put("path", store.toString())))
+                .put("live", new JsonObject()
+                        .put("pollInterval", 1000)
+                        .put("batchSize", 500)
+                        .put("reseedInterval", 10000))
+                .put("datasource", new JsonObject()
+                        .put("instances", 2)
+                        .put("backend", backend)
+                        .put("pg", new JsonObject().put("maxSize", 4).put("pipeliningLimit", 256).put("fetchSize", 500))
+                        .put("minSize", 0)
+                        .put("maxSize", 15)
+                        .put("initialSize", 1)
+                        .put("warmupConnections", 4)
+                        .put("provider_class", "io.vertx.ext.jdbc.spi.impl.AgroalCPDataSourceProvider")
+                        .put("driverClassName", "org.postgresql.Driver")
+                        .put("jdbcUrl", jdbcUrl)
+                        .put("principal", user)
+                        .put("credential", password))
+                .put("variables", new JsonObject()
+                        .put("allowlist", new JsonArray().add("mission").add("incident").add("nrAssignments"))
+                        .put("cacheSize", 1000));
+    }
+
+    private static void deploy(Vertx vertx, JsonObject config) throws Exception {
+        Path path = Files.createTempFile("process-viewer-loadtest", ".yaml");
+        Files.write(path, config.encodePrettily().getBytes(StandardCharsets.UTF_8));
+        System.setProperty("vertx-config-path", path.toString());
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        vertx.deployVerticle(MainVerticle.class.getName(), ar -> {
+            if (ar.succeeded()) {
+                deployed.complete(ar.result());
+            } else {
+                deployed.completeExceptionally(ar.cause());
+            }
+        });
+        deployed.get();
+        log.info("Deployed the process viewer with configuration {}", path);
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + arg + "\n" + usage());
+            }
+            int eq = arg.indexOf('=');
+            options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private static String usage() {
+        return "Usage: java -jar loadtest.jar [--name=value ...]\n"
+                + "  --instances=10000    process instances generated and requested\n"
+                + "  --seed=1             seed of the generated data\n"
+                + "  --retryRate=0.1      probability of going back a few nodes after each node\n"
+                + "  --activeRate=0.2     share of instances still active\n"
+                + "  --abortRate=0.05     share of the other instances that were aborted\n"
+                + "  --jdbcUrl=...        external database (default: embedded PostgreSQL)\n"
+                + "  --user=postgres --password=postgres\n"
+                + "  --generate           load the generated data into the external database\n"
+                + "  --target=host:port   viewer to test (default: deployed in this JVM on --port)\n"
+                + "  --port=8080 --backend=jdbc|pg\n"
+                + "  --concurrency=64     concurrent users\n"
+                + "  --warmup=10 --duration=60   seconds\n"
+                + "  --mix=data=50,image=20,overlay=20,diagram=2,heatmap=2,bulk=3,list=2,range=1";
+    }
+}
@@ -0,0 +1,272 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates the jBPM audit logs of synthetic <code>incident-process</code> instances and bulk loads them with COPY.
+ *
+ * Every instance is derived from its own seeded random, so the three tables are written in three independent passes
+ * that agree with each other, and a given seed and instance count always produce the same data. An instance walks the
+ * nodes of the process diagram in document order, going back a few nodes now and then (assignment retries), and
+ * updates its variables as it goes. Instances are completed, aborted or still active with the configured ratios.
+ */
+class LogGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(LogGenerator.class);
+
+    static final String PROCESS_ID = "incident-process";
+
+    private static final Pattern NODE_ID = Pattern.compile("id=\"([^\"?]+)\\?shapeType=BACKGROUND\"");
+
+    static final LocalDateTime START = LocalDateTime.of(2019, 5, 1, 0, 0);
+
+    private static final long START_SECOND = START.toEpochSecond(ZoneOffset.UTC);
+
+    private final String jdbcUrl;
+
+    private final String user;
+
+    private final String password;
+
+    private final int instances;
+
+    private final long seed;
+
+    private final double retryRate;
+
+    private final double activeRate;
+
+    private final double abortRate;
+
+    private final List<String> nodes;
+
+    LogGenerator(String jdbcUrl, String user, String password, int instances, long seed, double retryRate,
+                 double activeRate, double abortRate) {
+        this.jdbcUrl = jdbcUrl;
+        this.user = user;
+        this.password = password;
+        this.instances = instances;
+        this.seed = seed;
+        this.retryRate = retryRate;
+        this.activeRate = activeRate;
+        this.abortRate = abortRate;
+        this.nodes = nodeIds();
+    }
+
+    static String correlationKey(int instance) {
+        return String.format("incident-%08d", instance);
+    }
+
+    void generate() throws SQLException, IOException {
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, user, password)) {
+            execute(connection, "jbpm-audit-schema.sql");
+            CopyManager copy = connection.unwrap(PGConnection.class).getCopyAPI();
+            long start = System.nanoTime();
+            long processRows = copy.copyIn("COPY processinstancelog (id, correlationkey, duration, end_date, processid, "
+                    + "processinstanceid, processname, processversion, start_date, status) FROM STDIN", new Rows(Table.PROCESS));
+            long nodeRows = copy.copyIn("COPY nodeinstancelog (id, log_date, nodeid, nodeinstanceid, nodename, nodetype, "
+                    + "processid, processinstanceid, type) FROM STDIN", new Rows(Table.NODE));
+            long variableRows = copy.copyIn("COPY variableinstancelog (id, log_date, oldvalue, processid, processinstanceid, "
+                    + "value, variableid, variableinstanceid) FROM STDIN", new Rows(Table.VARIABLE));
+            log.info("Loaded {} process, {} node and {} variable log rows in {} s", processRows, nodeRows, variableRows,
+                    (System.nanoTime() - start) / 1_000_000_000);
+            execute(connection, "jbpm-audit-indexes.sql");
+        }
+    }
+
+    private enum Table { PROCESS, NODE, VARIABLE }
+
+    /**
+     * Reader over the COPY text format rows of one table, generated instance by instance.
+     */
+    private class Rows extends Reader {
+
+        private final Table table;
+
+        private final StringBuilder buffer = new StringBuilder();
+
+        private int position;
+
+        private int instance;
+
+        private long nodeId;
+
+        private long variableId;
+
+        Rows(Table table) {
+            this.table = table;
+        }
+
+        @Override
+        public int read(char[] chars, int offset, int length) {
+            while (position == buffer.length()) {
+                if (instance == instances) {
+                    return -1;
+                }
+                buffer.setLength(0);
+                position = 0;
+                instance++;
+                append(instance);
+            }
+            int count = Math.min(length, buffer.length() - position);
+            buffer.getChars(position, position + count, chars, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void append(int instance) {
+            // the path is drawn from its own random in every pass, the variable values from another one
+            Random random = new Random(seed * 31 + instance);
+            Random values = new Random(~(seed * 31 + instance));
+            long time = START_SECOND + (long) instance * 60 + random.nextInt(60);
+            boolean active = random.nextDouble() < activeRate;
+            boolean aborted = !active && random.nextDouble() < abortRate;
+            int length = 4 + random.nextInt(nodes.size() - 3);
+            int retries = 0;
+            int nodeInstance = 0;
+            long startTime = time;
+            for (int i = 0, step = 0; step < length; step++) {
+                String node = nodes.get(i % nodes.size());
+                nodeInstance++;
+                time += 1 + random.nextInt(90);
+                boolean last = step == length - 1;
+                if (table == Table.NODE) {
+                    node(++nodeId, time, node, nodeInstance, instance, NodeHistory.TYPE_ENTER);
+                }
+                if (!(last && active)) {
+                    time += 1 + random.nextInt(300);
+                    if (table == Table.NODE) {
+                        node(++nodeId, time, node, nodeInstance, instance, last && aborted ? 2 : NodeHistory.TYPE_EXIT);
+                    }
+                }
+                if (table == Table.VARIABLE && step % 4 == 0) {
+                    variables(values, time, instance, retries, step);
+                }
+                i++;
+                if (i > 3 && random.nextDouble() < retryRate) {
+                    i -= 1 + random.nextInt(3);
+                    retries++;
+                }
+            }
+            if (table == Table.PROCESS) {
+                int status = active ? ProcessInstance.STATUS_ACTIVE : aborted ? ProcessInstance.STATUS_ABORTED : ProcessInstance.STATUS_COMPLETED;
+                buffer.append(instance).append('\t')
+                        .append(correlationKey(instance)).append('\t')
+                        .append(active ? "\\N" : Long.toString((time - startTime) * 1000)).append('\t')
+                        .append(active ? "\\N" : timestamp(time)).append('\t')
+                        .append(PROCESS_ID).append('\t')
+                        .append(instance).append('\t')
+                        .append("incident-process").append('\t')
+                        .append("1.0").append('\t')
+                        .append(timestamp(startTime)).append('\t')
+                        .append(status).append('\n');
+            }
+        }
+
+        private void node(long id, long time, String node, int nodeInstance, int instance, int type) {
+            buffer.append(id).append('\t')
+                    .append(timestamp(time)).append('\t')
+                    .append(node).append('\t')
+                    .append(nodeInstance).append('\t')
+                    .append("Node ").append(node, 1, 9).append('\t')
+                    .append("HumanTaskNode").append('\t')
+                    .append(PROCESS_ID).append('\t')
+                    .append(instance).append('\t')
+                    .append(type).append('\n');
+        }
+
+        private void variables(Random random, long time, int instance, int retries, int step) {
+            double lat = 34.15 + random.nextDouble() * 0.1;
+            double lon = -77.95 + random.nextDouble() * 0.12;
+            variable(time, instance, "nrAssignments", Integer.toString(retries));
+            variable(time, instance, "incident", String.format(Locale.ROOT, "Incident [id=%s, latitude=%.5f, longitude=%.5f, numberOfPeople=%d, "
+                    + "medicalNeeded=%b, victimName=Victim %d, victimPhoneNumber=(555) 010-0000, timestamp=%d, status=ASSIGNED]",
+                    correlationKey(instance), lat, lon, 1 + random.nextInt(8), random.nextBoolean(), instance, time * 1000));
+            variable(time, instance, "mission", String.format(Locale.ROOT, "Mission [id=mission-%d-%d, incidentId=%s, responderId=%d, "
+                    + "responderStartLat=%.4f, responderStartLong=%.4f, incidentLat=%.5f, incidentLong=%.5f, destinationLat=34.1706, "
+                    + "destinationLong=-77.949, responderLat=%.4f, responderLong=%.4f, status=UPDATED, steps=[]]",
+                    instance, step, correlationKey(instance), 1 + random.nextInt(500), lat + 0.01, lon - 0.01, lat, lon,
+                    lat + 0.005, lon - 0.005));
+            // variables the viewer does not show, which the variable allowlist filters out
+            variable(time, instance, "missionCommand", "CreateMissionCommand [step=" + step + "]");
+        }
+
+        private void variable(long time, int instance, String name, String value) {
+            buffer.append(++variableId).append('\t')
+                    .append(timestamp(time)).append('\t')
+                    .append("\\N").append('\t')
+                    .append(PROCESS_ID).append('\t')
+                    .append(instance).append('\t')
+                    .append(value).append('\t')
+                    .append(name).append('\t')
+                    .append(name).append('\n');
+        }
+    }
+
+    private static String timestamp(long epochSecond) {
+        return Instant.ofEpochSecond(epochSecond).toString().replace('T', ' ').replace("Z", "");
+    }
+
+    /**
+     * Node ids of the process diagram in document order, without the lane.
+     */
+    private static List<String> nodeIds() {
+        Set<String> ids = new LinkedHashSet<>();
+        Matcher matcher = NODE_ID.matcher(resource(PROCESS_ID + "-svg.svg"));
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+        List<String> nodes = new ArrayList<>(ids);
+        return nodes.subList(1, nodes.size());
+    }
+
+    private static void execute(Connection connection, String script) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : resource(script).split(";")) {
+                String trimmed = sql.replaceAll("(?m)^--.*$", "").trim();
+                if (!trimmed.isEmpty()) {
+                    statement.execute(trimmed);
+                }
+            }
+        }
+    }
+
+    private static String resource(String name) {
+        try (InputStream is = LogGenerator.class.getClassLoader().getResourceAsStream(name)) {
+            if (is == null) {
+                throw new IllegalStateException("Missing resource " + name);
+            }
+            return IOUtils.toString(is, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read resource " + name, e);
+        }
+    }
+}
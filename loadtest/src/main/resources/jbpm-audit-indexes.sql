@@ -0,0 +1,12 @@
+-- Indexes of the jBPM audit log tables, as created by the jBPM PostgreSQL DDL.
+CREATE INDEX IF NOT EXISTS idx_pinstlog_correlation ON processinstancelog (correlationkey);
+CREATE INDEX IF NOT EXISTS idx_pinstlog_pinstid ON processinstancelog (processinstanceid);
+CREATE INDEX IF NOT EXISTS idx_pinstlog_pid ON processinstancelog (processid);
+CREATE INDEX IF NOT EXISTS idx_pinstlog_status ON processinstancelog (status);
+CREATE INDEX IF NOT EXISTS idx_ninstlog_pinstid ON nodeinstancelog (processinstanceid);
+CREATE INDEX IF NOT EXISTS idx_ninstlog_nodetype ON nodeinstancelog (nodetype);
+CREATE INDEX IF NOT EXISTS idx_ninstlog_pid ON nodeinstancelog (processid);
+CREATE INDEX IF NOT EXISTS idx_vinstlog_pinstid ON variableinstancelog (processinstanceid);
+CREATE INDEX IF NOT EXISTS idx_vinstlog_varid ON variableinstancelog (variableid);
+CREATE INDEX IF NOT EXISTS idx_vinstlog_pid ON variableinstancelog (processid);
+ANALYZE;
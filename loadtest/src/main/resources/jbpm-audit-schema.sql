@@ -0,0 +1,47 @@
+-- Audit log tables of the jBPM process engine, restricted to the columns the process viewer reads.
+-- Indexes are created after the data is loaded.
+CREATE TABLE IF NOT EXISTS processinstancelog (
+    id bigint NOT NULL PRIMARY KEY,
+    correlationkey varchar(255),
+    duration bigint,
+    end_date timestamp,
+    externalid varchar(255),
+    user_identity varchar(255),
+    outcome varchar(255),
+    parentprocessinstanceid bigint,
+    processid varchar(255),
+    processinstancedescription varchar(255),
+    processinstanceid bigint NOT NULL,
+    processname varchar(255),
+    processtype integer,
+    processversion varchar(255),
+    start_date timestamp,
+    status integer
+);
+
+CREATE TABLE IF NOT EXISTS nodeinstancelog (
+    id bigint NOT NULL PRIMARY KEY,
+    connection varchar(255),
+    log_date timestamp,
+    externalid varchar(255),
+    nodeid varchar(255),
+    nodeinstanceid varchar(255),
+    nodename varchar(255),
+    nodetype varchar(255),
+    processid varchar(255),
+    processinstanceid bigint NOT NULL,
+    type integer,
+    workitemid bigint
+);
+
+CREATE TABLE IF NOT EXISTS variableinstancelog (
+    id bigint NOT NULL PRIMARY KEY,
+    externalid varchar(255),
+    log_date timestamp,
+    oldvalue varchar(4000),
+    processid varchar(255),
+    processinstanceid bigint NOT NULL,
+    value varchar(4000),
+    variableid varchar(255),
+    variableinstanceid varchar(255)
+);
@@ -0,0 +1,218 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.AbstractVerticle;
+import io.vertx.reactivex.core.eventbus.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls <code>nodeinstancelog</code> and <code>variableinstancelog</code> for rows past a high-water mark and publishes
+ * them per process instance on <code>process-instance-changes.&lt;processInstanceId&gt;</code>.
+ *
+ * A single instance is deployed, so the database load depends on the rate of change and not on the number of viewers.
+ * When a batch is full the next one is read right away, otherwise the poller waits for the poll interval.
+ * Rows whose transaction commits after rows with higher ids are caught by re-reading the last <code>safetyLag</code>
+ * ids below each watermark, see {@link LogWindow}; the ids re-read are remembered rather than published again.
+ * The poller also keeps the {@link NodeOccupancy} of all active process instances, seeded at the watermark it starts
+ * from and reseeded every <code>reseedInterval</code> milliseconds, and answers <code>process-heatmap-counts</code>
+ * requests from it.
+ *
+ * The poller starts without the database: the watermarks and the occupancy are seeded in the background, and a failed
+ * seed is retried with a backoff doubling from the poll interval up to {@link #MAX_SEED_DELAY}. Until the seed
+ * succeeds, heatmap counts are answered with a 503 and the application is not ready.
+ */
+public class ChangePollerVerticle extends AbstractVerticle {
+
+    static final String CHANGES_ADDRESS = "process-instance-changes.";
+
+    static final long MAX_SEED_DELAY = 30000L;
+
+    private static final Logger log = LoggerFactory.getLogger(ChangePollerVerticle.class);
+
+    private long pollInterval;
+
+    private int batchSize;
+
+    private long safetyLag;
+
+    private long reseedInterval;
+
+    private long nextReseed;
+
+    private LogWindow nodes;
+
+    private LogWindow variables;
+
+    private long timer = -1;
+
+    private boolean stopped;
+
+    private NodeOccupancy occupancy = new NodeOccupancy();
+
+    @Override
+    public Completable rxStart() {
+        pollInterval = config().getLong("pollInterval", 1000L);
+        batchSize = config().getInteger("batchSize", 500);
+        safetyLag = config().getLong("safetyLag", 100L);
+        reseedInterval = config().getLong("reseedInterval", 300000L);
+        vertx.eventBus().<JsonObject>consumer("process-heatmap-counts", m -> {
+            if (nodes == null) {
+                m.fail(503, "Process changes are not seeded yet");
+            } else {
+                m.reply(occupancy.toJson(m.body().getString("processId")));
+            }
+        });
+        start(pollInterval);
+        return Completable.complete();
+    }
+
+    /**
+     * Seeds the watermarks and the occupancy, then starts polling. Retried with a doubling delay on failure.
+     */
+    private void start(long retryDelay) {
+        this.<JsonObject>query("logWatermark", new JsonObject())
+                .flatMap(json -> {
+                    JsonObject watermark = json.getJsonArray("result").getJsonObject(0);
+                    long nodeWatermark = watermark.getLong("nodewatermark");
+                    long variableWatermark = watermark.getLong("variablewatermark");
+                    return seed(nodeWatermark).doOnSuccess(seeded -> {
+                        nodes = new LogWindow(nodeWatermark, safetyLag);
+                        variables = new LogWindow(variableWatermark, safetyLag);
+                    });
+                })
+                .subscribe(seeded -> {
+                            if (stopped) {
+                                return;
+                            }
+                            occupancy = seeded;
+                            nextReseed = System.currentTimeMillis() + reseedInterval;
+                            MainVerticle.seeded(vertx);
+                            log.info("Polling for process changes after node log {} and variable log {}", nodes.watermark(), variables.watermark());
+                            schedule(pollInterval);
+                        },
+                        err -> {
+                            log.warn("Seeding the process change poller failed, retrying in {} ms", retryDelay, err);
+                            if (!stopped) {
+                                timer = vertx.setTimer(Math.max(retryDelay, 1), t -> start(Math.min(retryDelay * 2, MAX_SEED_DELAY)));
+                            }
+                        });
+    }
+
+    @Override
+    public Completable rxStop() {
+        stopped = true;
+        vertx.cancelTimer(timer);
+        return Completable.complete();
+    }
+
+    private void schedule(long delay) {
+        if (!stopped) {
+            timer = vertx.setTimer(Math.max(delay, 1), t -> poll());
+        }
+    }
+
+    private void poll() {
+        if (reseedInterval > 0 && System.currentTimeMillis() >= nextReseed) {
+            reseed();
+            return;
+        }
+        JsonObject nodeParameters = new JsonObject().put("afterId", nodes.afterId()).put("limit", nodes.limit(batchSize));
+        JsonObject variableParameters = new JsonObject().put("afterId", variables.afterId()).put("limit", variables.limit(batchSize));
+        Single.zip(this.<JsonObject>query("nodeInstanceLogSince", nodeParameters).map(json -> json.getJsonArray("result")),
+                this.<JsonObject>query("variableInstanceLogSince", variableParameters).map(json -> json.getJsonArray("result")),
+                this::publish)
+                .subscribe(full -> schedule(full ? 0 : pollInterval),
+                        err -> {
+                            log.warn("Polling for process changes failed", err);
+                            schedule(pollInterval);
+                        });
+    }
+
+    /**
+     * Replaces the occupancy by one seeded at the current node watermark, in place of a poll so that no batch is
+     * folded in meanwhile. Rows the incremental fold got wrong, such as rows committed later than the safety lag,
+     * are corrected this way.
+     */
+    private void reseed() {
+        nextReseed = System.currentTimeMillis() + reseedInterval;
+        seed(nodes.watermark())
+                .subscribe(seeded -> {
+                            occupancy = seeded;
+                            schedule(0);
+                        },
+                        err -> {
+                            log.warn("Reseeding the node occupancy failed", err);
+                            schedule(pollInterval);
+                        });
+    }
+
+    /**
+     * Occupancy of the node instances open at the given node log id.
+     */
+    private Single<NodeOccupancy> seed(long upToId) {
+        return this.<JsonObject>query("openNodeInstances", new JsonObject().put("upToId", upToId))
+                .map(json -> NodeOccupancy.fromOpenNodeInstances(json.getJsonArray("result")));
+    }
+
+    /**
+     * Publishes the rows of a batch not seen before grouped by process instance, and advances the watermarks.
+     *
+     * @return whether one of the batches was full of new rows, i.e. more rows may be waiting
+     */
+    private boolean publish(JsonArray nodeRows, JsonArray variableRows) {
+        Map<Long, JsonObject> changes = new LinkedHashMap<>();
+        int newNodes = 0;
+        for (Object o : nodeRows) {
+            JsonObject row = (JsonObject) o;
+            if (!nodes.add(row.getLong("id"))) {
+                continue;
+            }
+            newNodes++;
+            occupancy.add(row.getLong("processinstanceid"), row.getString("processid"),
+                    row.getString("nodeinstanceid"), row.getString("nodeid"), row.getInteger("type"));
+            changes(changes, row.getLong("processinstanceid")).getJsonArray("nodes").add(new JsonObject()
+                    .put("nodeInstanceId", row.getString("nodeinstanceid"))
+                    .put("nodeId", row.getString("nodeid"))
+                    .put("type", row.getInteger("type"))
+                    .put("date", row.getString("log_date")));
+        }
+        int newVariables = 0;
+        for (Object o : variableRows) {
+            JsonObject row = (JsonObject) o;
+            if (!variables.add(row.getLong("id"))) {
+                continue;
+            }
+            newVariables++;
+            changes(changes, row.getLong("processinstanceid")).getJsonArray("variables").add(new JsonObject()
+                    .put("variableId", row.getString("variableid"))
+                    .put("value", row.getString("value"))
+                    .put("date", row.getString("log_date")));
+        }
+        nodes.slide();
+        variables.slide();
+        changes.forEach((processInstanceId, json) -> vertx.eventBus().publish(CHANGES_ADDRESS + processInstanceId, json));
+        return newNodes >= batchSize || newVariables >= batchSize;
+    }
+
+    private static JsonObject changes(Map<Long, JsonObject> changes, Long processInstanceId) {
+        return changes.computeIfAbsent(processInstanceId, id -> new JsonObject()
+                .put("processInstanceId", id)
+                .put("nodes", new JsonArray())
+                .put("variables", new JsonArray()));
+    }
+
+    private <T> Single<T> query(String name, JsonObject parameters) {
+        JsonObject json = new JsonObject()
+                .put("query", name)
+                .put("parameters", parameters);
+        return vertx.eventBus().<T>rxRequest("query", json)
+                .map(Message::body);
+    }
+}
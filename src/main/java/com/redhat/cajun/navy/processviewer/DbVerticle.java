@@ -1,66 +1,128 @@
 package com.redhat.cajun.navy.processviewer;
 
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import io.reactivex.Completable;
+import io.reactivex.Observable;
 import io.reactivex.Single;
-import io.reactivex.SingleSource;
+import io.reactivex.functions.BiFunction;
+import io.reactivex.functions.Function;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.reactivex.core.AbstractVerticle;
 import io.vertx.reactivex.core.eventbus.Message;
-import io.vertx.reactivex.ext.jdbc.JDBCClient;
-import io.vertx.reactivex.ext.sql.SQLConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class DbVerticle extends AbstractVerticle {
 
-    private JDBCClient jdbcClient;
+    private static final Logger log = LoggerFactory.getLogger(DbVerticle.class);
+
+    private SqlBackend backend;
+
+    private List<String> variableAllowlist;
+
+    private LruCache<Long, LatestVariables> variableCache;
+
+    private final SingleFlight<String, Object> inFlight = new SingleFlight<>("query");
+
+    private static final AtomicInteger connectionsActive = Metrics.gauge("db.connections.active", new AtomicInteger());
+
+    private static final AtomicInteger connectionsPending = Metrics.gauge("db.connections.pending", new AtomicInteger());
 
     @Override
     public Completable rxStart() {
 
-        jdbcClient = JDBCClient.createShared(vertx, config(), "dispatch-service");
+        backend = SqlBackend.create(vertx, config());
+        JsonObject variables = config().getJsonObject("variables", new JsonObject());
+        variableAllowlist = variables.getJsonArray("allowlist", new JsonArray()).stream()
+                .map(Object::toString).collect(Collectors.toList());
+        variableCache = new LruCache<>(variables.getInteger("cacheSize", 0));
         vertx.eventBus().consumer("query", this::query);
+        return warmUp(config().getInteger("warmupConnections", 1));
+    }
+
+    @Override
+    public Completable rxStop() {
+        backend.close();
         return Completable.complete();
     }
 
     private void query(Message<JsonObject> message) {
-        switch (message.body().getString("query")) {
+        String query = message.body().getString("query");
+        switch (query) {
             case "processInstanceByCorrelationKey":
-                connect()
-                        .flatMap(connection -> processInstanceByCorrelationKey(connection,
+                withConnection(message, connection -> processInstanceByCorrelationKey(connection,
+                                message.body().getJsonObject("parameters").getString("correlationKey")))
+                        .map(ProcessInstance::fromJson)
+                        .subscribe(message::reply, (err) -> fail(message, err));
+                break;
+            case "processInstanceView":
+                withConnection(message, connection -> processInstanceView(connection,
+                                message.body().getJsonObject("parameters").getString("correlationKey"),
+                                message.body().getJsonObject("parameters").getBoolean("variables", false)))
+                        .subscribe(message::reply, (err) -> fail(message, err));
+                break;
+            case "processInstanceViews":
+                withConnection(message, connection -> processInstanceViews(connection,
+                                message.body().getJsonObject("parameters").getJsonArray("correlationKeys"),
+                                message.body().getJsonObject("parameters").getBoolean("variables", false)))
+                        .map(views -> new JsonArray(views.stream().map(InstanceView::toJson).collect(Collectors.toList())))
+                        .subscribe((result) -> message.reply(new JsonObject().put("result", result)),
+                                (err) -> message.fail(-1, err.getMessage()));
+                break;
+            case "processInstancePage":
+                withConnection(message, connection -> processInstancePage(connection, message.body().getJsonObject("parameters")))
+                        .subscribe((result) -> message.reply(new JsonObject().put("result", result)),
+                                (err) -> message.fail(-1, err.getMessage()));
+                break;
+            case "processInstanceWatermark":
+                withConnection(message, connection -> processInstanceWatermark(connection,
                                 message.body().getJsonObject("parameters").getString("correlationKey")))
                         .map(json -> new JsonArray().add(json))
                         .subscribe((result) -> message.reply(new JsonObject().put("result", result)),
-                                (err) -> {
-                                    if (err instanceof NoSuchElementException) {
-                                        message.fail(1, err.getMessage());
-                                    } else {
-                                        message.fail(-1, err.getMessage());
-                                    }
-                                });
+                                (err) -> fail(message, err));
                 break;
-            case "processInstanceHistoryActive":
-                connect()
-                        .flatMap(connection -> processInstanceHistoryActive(connection,
+            case "processInstanceHistory":
+                withConnection(message, connection -> processInstanceHistory(connection,
                                 message.body().getJsonObject("parameters").getLong("processInstanceId")))
+                        .subscribe(message::reply, (err) -> message.fail(-1, err.getMessage()));
+                break;
+            case "processInstanceVariableValues":
+                withConnection(message, connection -> processInstanceVariableValues(connection,
+                                message.body().getJsonObject("parameters").getLong("processInstanceId")))
+                        .subscribe(message::reply, (err) -> message.fail(-1, err.getMessage()));
+                break;
+            case "logWatermark":
+                withConnection(message, this::logWatermark)
+                        .map(json -> new JsonArray().add(json))
+                        .subscribe((result) -> message.reply(new JsonObject().put("result", result)),
+                                (err) -> message.fail(-1, err.getMessage()));
+                break;
+            case "nodeInstanceLogSince":
+                withConnection(message, connection -> nodeInstanceLogSince(connection,
+                                message.body().getJsonObject("parameters").getLong("afterId"),
+                                message.body().getJsonObject("parameters").getInteger("limit")))
                         .subscribe((result) -> message.reply(new JsonObject().put("result", new JsonArray(result))),
                                 (err) -> message.fail(-1, err.getMessage()));
                 break;
-            case "processInstanceHistoryComplete":
-                connect()
-                        .flatMap(connection -> processInstanceHistoryComplete(connection,
-                                message.body().getJsonObject("parameters").getLong("processInstanceId")))
+            case "openNodeInstances":
+                withConnection(message, connection -> openNodeInstances(connection,
+                                message.body().getJsonObject("parameters").getLong("upToId")))
                         .subscribe((result) -> message.reply(new JsonObject().put("result", new JsonArray(result))),
                                 (err) -> message.fail(-1, err.getMessage()));
                 break;
-            case "processInstanceVariableValues":
-                connect()
-                        .flatMap(connection -> processInstanceVariableValues(connection,
-                                message.body().getJsonObject("parameters").getLong("processInstanceId")))
+            case "variableInstanceLogSince":
+                withConnection(message, connection -> variableInstanceLogSince(connection,
+                                message.body().getJsonObject("parameters").getLong("afterId"),
+                                message.body().getJsonObject("parameters").getInteger("limit")))
                         .subscribe((result) -> message.reply(new JsonObject().put("result", new JsonArray(result))),
                                 (err) -> message.fail(-1, err.getMessage()));
                 break;
@@ -69,12 +131,152 @@ public class DbVerticle extends AbstractVerticle {
         }
     }
 
-    private SingleSource<JsonObject> processInstanceByCorrelationKey(SQLConnection connection, String correlationKey) {
+    /**
+     * Opens the given number of connections at once and runs the request queries on each of them with parameters
+     * that match nothing, so that the pool is filled and the statements are prepared before the first request.
+     * A failed warm-up is logged and does not prevent the verticle from starting; connections are then opened on demand.
+     */
+    private Completable warmUp(int connections) {
+        long start = System.nanoTime();
+        return Observable.range(0, connections)
+                .flatMapCompletable(i -> connect().flatMapCompletable(connection -> warmUp(connection)
+                        .doFinally(() -> {
+                            connection.close();
+                            connectionsActive.decrementAndGet();
+                        })))
+                .doOnComplete(() -> log.info("Warmed up {} database connections in {} ms", connections,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)))
+                .onErrorComplete(err -> {
+                    log.warn("Database warm-up failed", err);
+                    return true;
+                });
+    }
+
+    private Completable warmUp(SqlSession connection) {
+        JsonArray noIds = new JsonArray().add(-1L);
+        return Completable.concatArray(
+                processInstanceWatermark(connection, "").ignoreElement().onErrorComplete(NoSuchElementException.class::isInstance),
+                processInstanceByCorrelationKey(connection, "").ignoreElement().onErrorComplete(NoSuchElementException.class::isInstance),
+                processInstanceHistory(connection, -1L).ignoreElement(),
+                processInstanceVariableValues(connection, -1L).ignoreElement(),
+                processInstanceHistories(connection, noIds).ignoreElement(),
+                processInstancesVariableValues(connection, noIds).ignoreElement(),
+                processInstancePage(connection, new JsonObject().put("limit", 1)).ignoreElement())
+                .doFinally(() -> variableCache.remove(-1L));
+    }
+
+    private void fail(Message<JsonObject> message, Throwable err) {
+        if (err instanceof NoSuchElementException) {
+            message.fail(1, err.getMessage());
+        } else {
+            message.fail(-1, err.getMessage());
+        }
+    }
+
+    /**
+     * Resolves the process instance and its node history (and optionally its variables) on a single connection.
+     * The view carries the ETag of the rows it was built from, so that a change between the watermark read and these
+     * queries cannot leave a newer view under an older ETag.
+     */
+    private Single<InstanceView> processInstanceView(SqlSession connection, String correlationKey, boolean variables) {
+        return processInstanceByCorrelationKey(connection, correlationKey)
+                .map(ProcessInstance::fromJson)
+                .flatMap(processInstance -> variables
+                        ? both(connection,
+                                processInstanceVariableValues(connection, processInstance.processInstanceId()),
+                                processInstanceHistory(connection, processInstance.processInstanceId()),
+                                (values, history) -> InstanceView.of(processInstance, history, values)
+                                        .withEtag(InstanceView.etag(processInstance.processInstanceId(),
+                                                processInstance.status(), history.lastId(), values.lastId())))
+                        : processInstanceHistory(connection, processInstance.processInstanceId())
+                                .map(history -> InstanceView.of(processInstance, history, null)
+                                        .withEtag(InstanceView.etag(processInstance.processInstanceId(),
+                                                processInstance.status(), history.lastId(), null))));
+    }
+
+    /**
+     * Runs two queries on the same connection: at once where the backend pipelines them, the first query being sent
+     * first, and one after the other otherwise.
+     */
+    private static <A, B, R> Single<R> both(SqlSession connection, Single<A> first, Single<B> second, BiFunction<A, B, R> combiner) {
+        return connection.pipelined()
+                ? Single.zip(first, second, combiner)
+                : first.flatMap(a -> second.map(b -> combiner.apply(a, b)));
+    }
+
+    /**
+     * Resolves the views of a set of process instances with one query per table instead of one query chain per
+     * correlation key. Correlation keys without a process instance are left out of the result.
+     */
+    private Single<List<InstanceView>> processInstanceViews(SqlSession connection, JsonArray correlationKeys, boolean variables) {
+        if (correlationKeys.isEmpty()) {
+            return Single.just(Collections.emptyList());
+        }
+        String sql = "SELECT * FROM processinstancelog WHERE correlationkey IN (" + placeholders(correlationKeys.size()) + ")";
+        return connection.query(sql, correlationKeys)
+                .map(rows -> rows.stream().map(ProcessInstance::fromJson).collect(Collectors.toList()))
+                .flatMap(processInstances -> {
+                    if (processInstances.isEmpty()) {
+                        return Single.just(Collections.<InstanceView>emptyList());
+                    }
+                    JsonArray ids = new JsonArray(processInstances.stream()
+                            .map(ProcessInstance::processInstanceId).collect(Collectors.toList()));
+                    return both(connection,
+                            variables
+                                    ? processInstancesVariableValues(connection, ids)
+                                    : Single.just(Collections.<Long, ProcessVariables>emptyMap()),
+                            processInstanceHistories(connection, ids),
+                            (values, histories) -> processInstances.stream()
+                                    .map(p -> InstanceView.of(p,
+                                            histories.getOrDefault(p.processInstanceId(), new NodeHistory()),
+                                            variables ? values.getOrDefault(p.processInstanceId(), ProcessVariables.fromRows(Collections.emptyList())) : null))
+                                    .collect(Collectors.toList()));
+                });
+    }
+
+    /**
+     * One page of process instances past <code>afterId</code> in id order, optionally filtered by process id, status
+     * and start and end date range. Keyset pagination keeps the cost of a page independent of how far the listing
+     * got; rows are streamed into the reply in column order.
+     */
+    private Single<JsonArray> processInstancePage(SqlSession connection, JsonObject parameters) {
+        StringBuilder sql = new StringBuilder("SELECT processinstanceid, correlationkey, processid, status, start_date, end_date, duration " +
+                "FROM processinstancelog " +
+                "WHERE processinstanceid > ? ");
+        JsonArray params = new JsonArray().add(parameters.getLong("afterId", 0L));
+        if (parameters.getString("processId") != null) {
+            sql.append("AND processid = ? ");
+            params.add(parameters.getString("processId"));
+        }
+        if (parameters.getInteger("status") != null) {
+            sql.append("AND status = ? ");
+            params.add(parameters.getInteger("status"));
+        }
+        dateFilter(sql, params, "start_date >= ", parameters.getString("startedFrom"));
+        dateFilter(sql, params, "start_date < ", parameters.getString("startedTo"));
+        dateFilter(sql, params, "end_date >= ", parameters.getString("endedFrom"));
+        dateFilter(sql, params, "end_date < ", parameters.getString("endedTo"));
+        sql.append("ORDER BY processinstanceid ASC LIMIT ?");
+        params.add(parameters.getInteger("limit"));
+
+        return connection.queryStream(sql.toString(), params)
+                .reduceWith(JsonArray::new, JsonArray::add);
+    }
+
+    /**
+     * The date is a local date-time in the JVM time zone, the zone the log columns are listed from.
+     */
+    private static void dateFilter(StringBuilder sql, JsonArray params, String condition, String date) {
+        if (date != null) {
+            sql.append("AND ").append(condition).append("CAST(CAST(? AS text) AS timestamp) ");
+            params.add(date);
+        }
+    }
+
+    private Single<JsonObject> processInstanceByCorrelationKey(SqlSession connection, String correlationKey) {
         String sql = "SELECT * FROM processinstancelog WHERE correlationkey = ?";
-        return connection.rxQueryWithParams(sql, new JsonArray().add(correlationKey))
-                .doFinally(connection::close)
-                .map(rs -> {
-                    List<JsonObject> rows = rs.getRows();
+        return connection.query(sql, new JsonArray().add(correlationKey))
+                .map(rows -> {
                     if (rows.size() == 0) {
                         throw new NoSuchElementException("Process instance with correlation key " + correlationKey + " not found.");
                     } else {
@@ -83,77 +285,209 @@ public class DbVerticle extends AbstractVerticle {
                 });
     }
 
-    private Single<List<JsonObject>> processInstanceHistoryActive(SQLConnection connection, long processInstanceId) {
-        String sql = "SELECT nodeinstanceid, nodeid, nodename, nodetype, externalid, processinstanceid, " +
-                "log_date, connection, type, workitemid, nodecontainerid, referenceid, sla_due_date, slacompliance " +
-                "FROM nodeinstancelog " +
-                "WHERE nodeinstanceid in ( SELECT nil.nodeinstanceid from public.nodeinstancelog nil " +
-                "WHERE nil.processinstanceid = ? " +
-                "GROUP BY nil.nodeinstanceid " +
-                "HAVING sum(nil.type) = 0) " +
-                "AND type = 0 " +
-                "AND processinstanceid = ? " +
-                "ORDER BY id ASC";
-
-
-        return connection.rxQueryWithParams(sql, new JsonArray().add(processInstanceId).add(processInstanceId))
-                .doFinally(connection::close)
-                .map(rs -> {
-                    if (rs.getRows() == null) {
-                        return new ArrayList<>();
+    /**
+     * Cheap change marker of a process instance: its status and the highest node and variable log ids.
+     */
+    private Single<JsonObject> processInstanceWatermark(SqlSession connection, String correlationKey) {
+        String sql = "SELECT p.processinstanceid, p.status, " +
+                "(SELECT coalesce(max(n.id), 0) FROM nodeinstancelog n WHERE n.processinstanceid = p.processinstanceid) AS nodewatermark, " +
+                "(SELECT coalesce(max(v.id), 0) FROM variableinstancelog v WHERE v.processinstanceid = p.processinstanceid " +
+                variableFilter() + ") AS variablewatermark " +
+                "FROM processinstancelog p " +
+                "WHERE p.correlationkey = ?";
+        JsonArray params = new JsonArray();
+        variableAllowlist.forEach(params::add);
+        return connection.query(sql, params.add(correlationKey))
+                .map(rows -> {
+                    if (rows.size() == 0) {
+                        throw new NoSuchElementException("Process instance with correlation key " + correlationKey + " not found.");
                     } else {
-                        return rs.getRows();
+                        return rows.get(0);
                     }
                 });
     }
 
-    private Single<List<JsonObject>> processInstanceHistoryComplete(SQLConnection connection, long processInstanceId) {
-        String sql = "SELECT nodeinstanceid, nodeid, nodename, nodetype, externalid, processinstanceid, " +
-                "log_date, connection, type, workitemid, nodecontainerid, referenceid, sla_due_date, slacompliance " +
+    /**
+     * Streams the node history rows of the process instance once, in id order, and folds them into active and completed nodes.
+     */
+    private Single<NodeHistory> processInstanceHistory(SqlSession connection, long processInstanceId) {
+        String sql = "SELECT id, nodeinstanceid, nodeid, type, log_date " +
                 "FROM nodeinstancelog " +
-                "WHERE nodeinstanceid in ( SELECT nil.nodeinstanceid from nodeinstancelog nil " +
-                "WHERE nil.processinstanceid = ? " +
-                "AND nil.type = 1 " +
-                "GROUP BY nil.nodeinstanceid " +
-                "HAVING sum(nil.type) >= 1) " +
-                "AND type = 1 " +
-                "AND processinstanceid = ? " +
+                "WHERE processinstanceid = ? " +
                 "ORDER BY id ASC";
 
-        return connection.rxQueryWithParams(sql, new JsonArray().add(processInstanceId).add(processInstanceId))
-                .doFinally(connection::close)
-                .map(rs -> {
-                    if (rs.getRows() == null) {
-                        return new ArrayList<>();
-                    } else {
-                        return rs.getRows();
-                    }
+        return connection.queryStream(sql, new JsonArray().add(processInstanceId))
+                .reduceWith(NodeHistory::new, (history, row) -> history.add(row.getLong(0), row.getString(1), row.getString(2), row.getInteger(3), row.getString(4)));
+    }
+
+    /**
+     * Node histories of a set of process instances, streamed in one pass ordered by instance and log id.
+     */
+    private Single<Map<Long, NodeHistory>> processInstanceHistories(SqlSession connection, JsonArray processInstanceIds) {
+        String sql = "SELECT processinstanceid, nodeinstanceid, nodeid, type, log_date " +
+                "FROM nodeinstancelog " +
+                "WHERE processinstanceid IN (" + placeholders(processInstanceIds.size()) + ") " +
+                "ORDER BY processinstanceid, id ASC";
+
+        return connection.queryStream(sql, processInstanceIds)
+                .reduceWith(HashMap::new, (histories, row) -> {
+                    histories.computeIfAbsent(row.getLong(0), id -> new NodeHistory())
+                            .add(row.getString(1), row.getString(2), row.getInteger(3), row.getString(4));
+                    return histories;
                 });
     }
 
-    private Single<List<JsonObject>> processInstanceVariableValues(SQLConnection connection, long processInstanceId) {
-        String sql = "SELECT id, log_date, v1.processinstanceid, value, v1.variableid, variableinstanceid " +
-                "FROM public.variableinstancelog v1 " +
-                "INNER JOIN ( " +
-                "SELECT variableid, MAX(log_date) as mts, processinstanceid " +
-                "FROM public.variableinstancelog " +
-                "GROUP BY variableid, processinstanceid " +
-                ") v2 on v1.variableid = v2.variableid and v1.processinstanceid = v2.processinstanceid and v1.log_date = v2.mts " +
-                "WHERE v1.processinstanceid = ?;";
-
-        return connection.rxQueryWithParams(sql, new JsonArray().add(processInstanceId))
-                .doFinally(connection::close)
-                .map(rs-> {
-                    if (rs.getRows() == null) {
-                        return Collections.emptyList();
-                    } else {
-                        return rs.getRows();
+    /**
+     * Latest value per variable of a set of process instances. The full values are read, and stored in the variable
+     * cache for later incremental reads.
+     */
+    private Single<Map<Long, ProcessVariables>> processInstancesVariableValues(SqlSession connection, JsonArray processInstanceIds) {
+        String sql = "SELECT DISTINCT ON (processinstanceid, variableid) id, log_date, processinstanceid, value, variableid, variableinstanceid " +
+                "FROM variableinstancelog " +
+                "WHERE processinstanceid IN (" + placeholders(processInstanceIds.size()) + ") " +
+                variableFilter() +
+                "ORDER BY processinstanceid, variableid, id DESC";
+
+        JsonArray params = processInstanceIds.copy();
+        variableAllowlist.forEach(params::add);
+        return connection.query(sql, params)
+                .map(rows -> {
+                    Map<Long, LatestVariables> latest = new HashMap<>();
+                    rows.forEach(row -> latest.computeIfAbsent(row.getLong("processinstanceid"), id -> new LatestVariables()).add(row));
+                    Map<Long, ProcessVariables> values = new HashMap<>();
+                    latest.forEach((processInstanceId, l) -> {
+                        if (variableCache.enabled()) {
+                            variableCache.put(processInstanceId, l);
+                        }
+                        values.put(processInstanceId, ProcessVariables.fromRows(l.values.values()));
+                    });
+                    return values;
+                });
+    }
+
+    /**
+     * Latest value per variable of the process instance, restricted to the configured variable ids.
+     * The query is scoped to the process instance; when the cache is enabled only rows logged since the cached
+     * values are read.
+     */
+    private Single<ProcessVariables> processInstanceVariableValues(SqlSession connection, long processInstanceId) {
+        LatestVariables cached = variableCache.get(processInstanceId);
+        long lastId = cached == null ? 0 : cached.lastId;
+        String sql = "SELECT DISTINCT ON (variableid) id, log_date, processinstanceid, value, variableid, variableinstanceid " +
+                "FROM variableinstancelog " +
+                "WHERE processinstanceid = ? " +
+                "AND id > ? " +
+                variableFilter() +
+                "ORDER BY variableid, id DESC";
+
+        JsonArray params = new JsonArray().add(processInstanceId).add(lastId);
+        variableAllowlist.forEach(params::add);
+        return connection.query(sql, params)
+                .map(rows -> {
+                    LatestVariables latest = cached == null ? new LatestVariables() : cached;
+                    rows.forEach(latest::add);
+                    if (variableCache.enabled()) {
+                        variableCache.put(processInstanceId, latest);
                     }
+                    return ProcessVariables.fromRows(latest.values.values());
                 });
     }
 
-    private Single<SQLConnection> connect() {
-        return jdbcClient.rxGetConnection();
+    /**
+     * Highest ids of the node and variable logs, where polling for changes starts.
+     */
+    private Single<JsonObject> logWatermark(SqlSession connection) {
+        String sql = "SELECT (SELECT coalesce(max(id), 0) FROM nodeinstancelog) AS nodewatermark, " +
+                "(SELECT coalesce(max(id), 0) FROM variableinstancelog) AS variablewatermark";
+        return connection.query(sql, new JsonArray())
+                .map(rows -> rows.get(0));
+    }
+
+    private Single<List<JsonObject>> nodeInstanceLogSince(SqlSession connection, long afterId, int limit) {
+        String sql = "SELECT id, processinstanceid, processid, nodeinstanceid, nodeid, type, log_date " +
+                "FROM nodeinstancelog " +
+                "WHERE id > ? " +
+                "ORDER BY id ASC " +
+                "LIMIT ?";
+        return connection.query(sql, new JsonArray().add(afterId).add(limit));
+    }
+
+    /**
+     * Node instances of active process instances that were entered but not closed, as of the given node log id.
+     */
+    private Single<List<JsonObject>> openNodeInstances(SqlSession connection, long upToId) {
+        String sql = "SELECT n.processinstanceid, n.processid, n.nodeinstanceid, n.nodeid " +
+                "FROM nodeinstancelog n " +
+                "JOIN processinstancelog p ON p.processinstanceid = n.processinstanceid " +
+                "WHERE p.status = " + ProcessInstance.STATUS_ACTIVE + " " +
+                "AND n.type = " + NodeHistory.TYPE_ENTER + " " +
+                "AND n.id <= ? " +
+                "AND NOT EXISTS (SELECT 1 FROM nodeinstancelog c " +
+                "WHERE c.processinstanceid = n.processinstanceid AND c.nodeinstanceid = n.nodeinstanceid " +
+                "AND c.type <> " + NodeHistory.TYPE_ENTER + " AND c.id <= ?)";
+        return connection.query(sql, new JsonArray().add(upToId).add(upToId));
+    }
+
+    private Single<List<JsonObject>> variableInstanceLogSince(SqlSession connection, long afterId, int limit) {
+        String sql = "SELECT id, processinstanceid, variableid, value, log_date " +
+                "FROM variableinstancelog " +
+                "WHERE id > ? " +
+                variableFilter() +
+                "ORDER BY id ASC " +
+                "LIMIT ?";
+        JsonArray params = new JsonArray().add(afterId);
+        variableAllowlist.forEach(params::add);
+        return connection.query(sql, params.add(limit));
+    }
+
+    private String variableFilter() {
+        return variableAllowlist.isEmpty() ? "" : "AND variableid IN (" + placeholders(variableAllowlist.size()) + ") ";
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Acquires a connection, recording the time spent waiting for it and the number of connections waited for and in use.
+     */
+    private Single<SqlSession> connect() {
+        return Single.defer(() -> {
+            connectionsPending.incrementAndGet();
+            return backend.connect()
+                    .compose(Metrics.timed("db.connection.acquire"))
+                    .doOnSuccess(connection -> connectionsActive.incrementAndGet())
+                    .doFinally(connectionsPending::decrementAndGet);
+        });
+    }
+
+    /**
+     * Runs the query of the message on a connection of its own. Messages for the same query and parameters that arrive
+     * while it runs share its result instead of each taking a connection.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Single<T> withConnection(Message<JsonObject> message, Function<SqlSession, Single<T>> function) {
+        String query = message.body().getString("query");
+        String key = query + ":" + message.body().getJsonObject("parameters");
+        return inFlight.execute(key, () -> connect().<Object>flatMap(connection -> function.apply(connection)
+                .compose(Metrics.timed("db.query", "query", query))
+                .doFinally(() -> {
+                    connection.close();
+                    connectionsActive.decrementAndGet();
+                })))
+                .map(result -> (T) result);
+    }
+
+    private static class LatestVariables {
+
+        private long lastId;
+
+        private final Map<String, JsonObject> values = new HashMap<>();
+
+        void add(JsonObject row) {
+            values.put(row.getString("variableid"), row);
+            lastId = Math.max(lastId, row.getLong("id"));
+        }
     }
 
 }
@@ -0,0 +1,30 @@
+package com.redhat.cajun.navy.processviewer;
+
+/**
+ * Entity tag comparison for conditional requests.
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    /**
+     * Whether an <code>If-None-Match</code> header matches the entity tag. The header holds a list of tags, weak or
+     * strong, or <code>*</code>.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,139 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only store for views of finalized (completed or aborted) process instances, which never change.
+ *
+ * Records are appended to a single segment file as <code>[int length][short key length][key][view json]</code>.
+ * The index from key to record offset is kept in memory and rebuilt by scanning the segment when the store is opened;
+ * an incomplete record at the end of the segment (e.g. after a crash) is truncated.
+ * Except {@link #contains(String)}, which only looks at the index, methods do blocking file IO and must be called on a
+ * worker thread. The store is shared by all verticle instances.
+ */
+class FinalizedViewStore {
+
+    private static final Logger log = LoggerFactory.getLogger(FinalizedViewStore.class);
+
+    private static final Map<Path, FinalizedViewStore> stores = new ConcurrentHashMap<>();
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+
+    private long size;
+
+    private FinalizedViewStore(Path path) throws IOException {
+        this.path = path;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        load();
+        log.info("Opened finalized view store {} with {} views", path, index.size());
+    }
+
+    static FinalizedViewStore open(String path) {
+        return stores.computeIfAbsent(Paths.get(path).toAbsolutePath(), p -> {
+            try {
+                return new FinalizedViewStore(p);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open finalized view store " + p, e);
+            }
+        });
+    }
+
+    /**
+     * Closes the segment file; a later {@link #open(String)} of the same path reopens it and rebuilds the index.
+     */
+    synchronized void close() throws IOException {
+        stores.remove(path, this);
+        channel.close();
+    }
+
+    /**
+     * Whether a view is stored under the key, without IO. A view is indexed once it has been written.
+     */
+    boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    synchronized JsonObject get(String key) throws IOException {
+        Long offset = index.get(key);
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer header = read(offset, 6);
+        int length = header.getInt();
+        int keyLength = header.getShort();
+        ByteBuffer view = read(offset + 6 + keyLength, length - 2 - keyLength);
+        return new JsonObject(new String(view.array(), StandardCharsets.UTF_8));
+    }
+
+    synchronized void put(String key, JsonObject view) throws IOException {
+        if (index.containsKey(key)) {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] viewBytes = view.encode().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(4 + 2 + keyBytes.length + viewBytes.length);
+        record.putInt(2 + keyBytes.length + viewBytes.length)
+                .putShort((short) keyBytes.length)
+                .put(keyBytes)
+                .put(viewBytes)
+                .flip();
+        long offset = size;
+        while (record.hasRemaining()) {
+            size += channel.write(record, size);
+        }
+        channel.force(false);
+        index.put(key, offset);
+    }
+
+    private void load() throws IOException {
+        long end = channel.size();
+        long offset = 0;
+        while (offset + 6 <= end) {
+            ByteBuffer header = read(offset, 6);
+            int length = header.getInt();
+            int keyLength = header.getShort();
+            if (length < 2 + keyLength || offset + 4 + length > end) {
+                break;
+            }
+            String key = new String(read(offset + 6, keyLength).array(), StandardCharsets.UTF_8);
+            index.put(key, offset);
+            offset += 4 + length;
+        }
+        if (offset < end) {
+            log.warn("Truncating incomplete record at offset {} of finalized view store", offset);
+            channel.truncate(offset);
+        }
+        size = offset;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of finalized view store");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -1,15 +1,16 @@
 package com.redhat.cajun.navy.processviewer;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.RejectedExecutionException;
 
 import io.reactivex.Completable;
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.vertx.core.eventbus.ReplyException;
 import io.vertx.core.json.JsonArray;
@@ -17,140 +18,273 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.reactivex.core.AbstractVerticle;
 import io.vertx.reactivex.core.eventbus.Message;
 import org.apache.commons.io.IOUtils;
-import org.jbpm.process.svg.SVGImageProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ImageVerticle extends AbstractVerticle {
 
+    private static final Logger log = LoggerFactory.getLogger(ImageVerticle.class);
+
+    private final Map<String, Single<ProcessDiagram>> diagrams = new HashMap<>();
+
+    private LruCache<String, InstanceView> views;
+
+    private final SingleFlight<String, InstanceView> requests = new SingleFlight<>("instance-view");
+
+    private final SingleFlight<String, InstanceView> renders = new SingleFlight<>("instance-render");
+
+    private FinalizedViewStore store;
+
+    private RenderPool renderPool;
+
     @Override
     public Completable rxStart() {
 
+        views = new LruCache<>(config().getInteger("cacheSize", 0));
+        JsonObject render = config().getJsonObject("render", new JsonObject());
+        renderPool = new RenderPool(vertx, "svg-render", render.getInteger("poolSize", 4), render.getInteger("maxQueue", 64));
+
         vertx.eventBus().<JsonObject>consumer("process-image").toObservable()
                 .subscribe(this::image);
         vertx.eventBus().<JsonObject>consumer("process-instance-image").toObservable()
                 .subscribe(m -> instanceData(m, false));
         vertx.eventBus().<JsonObject>consumer("process-instance-data").toObservable()
                 .subscribe(m -> instanceData(m, true));
-        return Completable.complete();
+        vertx.eventBus().<JsonObject>consumer("process-instance-overlay").toObservable()
+                .subscribe(this::overlay);
+        vertx.eventBus().<JsonObject>consumer("process-heatmap").toObservable()
+                .subscribe(this::heatmap);
+        return openStore(config().getJsonObject("store", new JsonObject()).getString("path"))
+                .andThen(preload(config().getJsonArray("preload", new JsonArray())));
 
     }
 
+    @Override
+    public Completable rxStop() {
+        renderPool.close();
+        return Completable.complete();
+    }
+
     private void image(Message<JsonObject> message) {
         String processId = message.body().getString("processId");
-        imageAsString(processId)
-                .subscribe((result) -> message.reply(new JsonObject().put("image", result)),
+        diagram(processId)
+                .subscribe((result) -> message.reply(new JsonObject().put("image", result.svg()).put("etag", result.etag())),
                         (err) -> message.fail(-1, err.getMessage()));
 
     }
 
+    /**
+     * Process diagram with the number of active node instances per node, across all active process instances.
+     * The counts come from the aggregate kept by the change poller; diagrams that cannot be indexed are returned as is.
+     */
+    private void heatmap(Message<JsonObject> message) {
+        String processId = message.body().getString("processId");
+        vertx.eventBus().<JsonObject>rxRequest("process-heatmap-counts", new JsonObject().put("processId", processId))
+                .map(Message::body)
+                .flatMap(counts -> diagram(processId)
+                        .flatMap(diagram -> {
+                            if (!diagram.indexed()) {
+                                return Single.just(ProcessDiagram.fixup(diagram.svg()));
+                            }
+                            Map<String, Integer> nodes = new HashMap<>();
+                            counts.getJsonObject("nodes").forEach(e -> nodes.put(e.getKey(), ((Number) e.getValue()).intValue()));
+                            return renderPool.execute(() -> diagram.heatmap(nodes))
+                                    .compose(Metrics.timed("diagram.render", "renderer", "heatmap"));
+                        })
+                        .map(image -> counts.copy().put("image", image)))
+                .subscribe(message::reply,
+                        (err) -> {
+                            if (err instanceof ReplyException) {
+                                message.fail(((ReplyException)err).failureCode(), err.getMessage());
+                            } else if (err instanceof RejectedExecutionException) {
+                                message.fail(503, err.getMessage());
+                            } else {
+                                message.fail(-1, err.getMessage());
+                            }
+                        });
+    }
+
+    /**
+     * Node states of a process instance, without rendering the diagram.
+     */
+    private void overlay(Message<JsonObject> message) {
+        String correlationKey = message.body().getString("correlationKey");
+        processInstanceView(correlationKey, false)
+                .subscribe(message::reply,
+                        (err) -> {
+                            if (err instanceof ReplyException) {
+                                message.fail(((ReplyException)err).failureCode(), err.getMessage());
+                            } else {
+                                message.fail(-1, err.getMessage());
+                            }
+                        });
+    }
+
+    /**
+     * Views of finalized instances are served from the finalized view store. Other instance views are cached by ETag:
+     * the ETag derived from the instance change watermark is looked up, and a view built meanwhile is cached under the
+     * ETag of the rows it was built from, which differs when the instance changed between both reads.
+     * When the ETag matches the one the client already has, only the ETag is returned.
+     * Concurrent requests for the same view and ETag share one lookup, and views are built and rendered once per ETag.
+     */
     private void instanceData(Message<JsonObject> message, boolean data) {
         String correlationKey = message.body().getString("correlationKey");
-        process(correlationKey)
-                .compose(json -> data ? json.flatMap(this::addProcessVariables) : json)
-                .flatMap(this::addImage)
-                .flatMap(this::addHistoryActive)
-                .flatMap(this::addHistoryComplete)
-                .flatMap(this::processImage)
+        String ifNoneMatch = message.body().getString("ifNoneMatch");
+        requests.execute(storeKey(correlationKey, data) + " " + ifNoneMatch, () -> storedView(correlationKey, data)
+                .map(view -> ETags.matches(ifNoneMatch, view.etag()) ? InstanceView.notModified(view.etag()) : view)
+                .switchIfEmpty(Single.defer(() -> liveView(correlationKey, data, ifNoneMatch))))
                 .subscribe(message::reply,
                         (err) -> {
                             if (err instanceof ReplyException) {
                                 message.fail(((ReplyException)err).failureCode(), err.getMessage());
+                            } else if (err instanceof RejectedExecutionException) {
+                                message.fail(503, err.getMessage());
                             } else {
                                 message.fail(-1, err.getMessage());
                             }
                         });
     }
 
-    private Single<String> processImage(ByteArrayInputStream image, List<String> completed, List<String> active) {
-        return  vertx.<String>rxExecuteBlocking(future -> future.complete(SVGImageProcessor.transform(image, completed, active, new HashMap<>())))
-                .flatMapSingle(Single::just);
-    }
-
-    private Single<JsonObject> processImage(JsonObject json) {
-        Map<String, String> active = json.getJsonArray("historyActive").stream().collect(Collectors.toMap(
-                k -> ((JsonObject) k).getString("nodeinstanceid"),
-                v -> ((JsonObject) v).getString("nodeid")));
-        List<String> completed = json.getJsonArray("historyComplete").stream().map(o -> {
-            JsonObject json2 = (JsonObject)o;
-            active.remove(json2.getString("nodeinstanceid"));
-            return json2.getString("nodeid");
-        }).collect(Collectors.toList());
-        ByteArrayInputStream svgStream = new ByteArrayInputStream(json.getBinary("imageBytes"));
-        return processImage(svgStream, completed, new ArrayList<>(active.values()))
-                .map(image -> image.replaceFirst("<\\?.*\\?>","")
-                        .replaceFirst("width=\"[0-9]*\"", "width=\"1080\"")
-                        .replaceFirst("height=\"[0-9]*\"","height=\"auto\""))
-                .map(image -> json.put("image", image))
-                .map(j -> {
-                    j.remove("imageBytes");
-                    j.remove("historyActive");
-                    j.remove("historyComplete");
-                    return j;
+    private Single<InstanceView> liveView(String correlationKey, boolean data, String ifNoneMatch) {
+        return watermark(correlationKey)
+                .map(watermark -> InstanceView.etag(watermark, data))
+                .flatMap(etag -> {
+                    if (ETags.matches(ifNoneMatch, etag)) {
+                        return Single.just(InstanceView.notModified(etag));
+                    }
+                    InstanceView view = views.get(etag);
+                    if (view != null) {
+                        return Single.just(view);
+                    }
+                    return renders.execute(etag, () -> processInstanceView(correlationKey, data)
+                            .flatMap(this::processImage)
+                            .doOnSuccess(v -> {
+                                if (views.enabled()) {
+                                    views.put(v.etag(), v);
+                                }
+                                if (v.processInstance().finalized()) {
+                                    storeView(correlationKey, data, v);
+                                }
+                            }));
                 });
     }
 
-    private Single<String> imageAsString(String processId) {
-        return imageAsByteArray(processId).map(String::new);
+    private Completable openStore(String path) {
+        if (path == null || path.isEmpty()) {
+            return Completable.complete();
+        }
+        return vertx.<FinalizedViewStore>rxExecuteBlocking(future -> future.complete(FinalizedViewStore.open(path)))
+                .doOnSuccess(s -> store = s)
+                .ignoreElement();
     }
 
-
-    private Single<byte[]> imageAsByteArray(String processId) {
-        return vertx.<byte[]>rxExecuteBlocking(future -> {
+    /**
+     * Looks the key up in the store index on the event loop, and only reads a stored view on a worker thread.
+     */
+    private Maybe<InstanceView> storedView(String correlationKey, boolean data) {
+        String key = storeKey(correlationKey, data);
+        if (store == null || !store.contains(key)) {
+            return Maybe.empty();
+        }
+        return vertx.<InstanceView>rxExecuteBlocking(future -> {
             try {
-                future.complete(imageAsBytes(processId  + "-svg.svg"));
+                JsonObject view = store.get(key);
+                future.complete(view == null ? null : InstanceView.fromJson(view));
             } catch (IOException e) {
                 future.fail(e);
             }
-        }).flatMapSingle(Single::just);
+        }, false);
     }
 
-    private Single<JsonObject> addProcessVariables(JsonObject processInstance) {
+    /**
+     * Stores a view whose own rows show a finalized instance, with the ETag of those rows. Stored views are served
+     * ahead of the watermark and never replaced, so a view of an instance that was still active must not get here.
+     */
+    private void storeView(String correlationKey, boolean data, InstanceView view) {
+        if (store == null) {
+            return;
+        }
+        vertx.<Void>rxExecuteBlocking(future -> {
+            try {
+                store.put(storeKey(correlationKey, data), view.toJson());
+                future.complete();
+            } catch (IOException e) {
+                future.fail(e);
+            }
+        }, false).subscribe(v -> {}, err -> log.warn("Cannot store view of process instance " + correlationKey, err));
+    }
 
-        return processVariables(processInstance.getLong("processinstanceid"))
-                .map(variables -> processInstance.put("variables", variables));
+    private static String storeKey(String correlationKey, boolean data) {
+        return (data ? "data/" : "image/") + correlationKey;
     }
 
-    private Single<JsonObject> addHistoryActive(JsonObject processInstance) {
-        return historyActive(processInstance.getLong("processinstanceid"))
-                .map(historyactive -> processInstance.put("historyActive", historyactive));
+    private Single<String> processImage(ProcessDiagram diagram, List<String> completed, List<String> active) {
+        if (diagram.indexed()) {
+            return renderPool.execute(() -> diagram.render(completed, active))
+                    .compose(Metrics.timed("diagram.render", "renderer", "splice"));
+        }
+        return renderPool.execute(() -> diagram.transform(completed, active))
+                .compose(Metrics.timed("diagram.render", "renderer", "transform"));
     }
 
-    private Single<JsonObject> addHistoryComplete(JsonObject processInstance) {
-        return historyComplete(processInstance.getLong("processinstanceid"))
-                .map(historycomplete -> processInstance.put("historyComplete", historycomplete));
+    private Single<InstanceView> processImage(InstanceView view) {
+        NodeHistory history = view.history();
+        return diagram(view.processInstance().processId())
+                .flatMap(diagram -> processImage(diagram, history.completed(), history.active()))
+                .map(view::withImage);
     }
 
-    private Single<JsonObject> addImage(JsonObject processInstance) {
-        return imageAsByteArray(processInstance.getString("processid"))
-                .map(b -> processInstance.put("imageBytes", b));
+    /**
+     * Loads and indexes the diagrams of the given processes and renders each once, so that neither the first
+     * request nor the renderer pays for it.
+     */
+    private Completable preload(JsonArray processIds) {
+        return Observable.fromIterable(processIds)
+                .map(Object::toString)
+                .flatMapCompletable(processId -> diagram(processId)
+                        .flatMap(diagram -> processImage(diagram, Collections.emptyList(), Collections.emptyList()))
+                        .ignoreElement()
+                        .doOnComplete(() -> log.info("Preloaded the diagram of process {}", processId)));
     }
 
-    private byte[] imageAsBytes(String location) throws IOException {
-        InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(location);
-        return IOUtils.toByteArray(is);
+    private Single<ProcessDiagram> diagram(String processId) {
+        return diagrams.computeIfAbsent(processId, id -> loadDiagram(id)
+                .doOnError(err -> diagrams.remove(id))
+                .cache());
     }
 
-    private Single<JsonObject> process(String correlationKey) {
-        return query("processInstanceByCorrelationKey", new JsonObject().put("correlationKey", correlationKey))
-                .map(a -> a.getJsonObject(0));
+    /**
+     * Reads and indexes the diagram on a worker thread: indexing scans the whole SVG document.
+     */
+    private Single<ProcessDiagram> loadDiagram(String processId) {
+        return vertx.<ProcessDiagram>rxExecuteBlocking(future -> {
+            try {
+                future.complete(ProcessDiagram.load(processId, imageAsBytes(processId  + "-svg.svg")));
+            } catch (IOException e) {
+                future.fail(e);
+            }
+        }).flatMapSingle(Single::just);
     }
 
-    private Single<JsonArray> historyActive(long processInstanceId) {
-        return query("processInstanceHistoryActive", new JsonObject().put("processInstanceId", processInstanceId));
+    private byte[] imageAsBytes(String location) throws IOException {
+        InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(location);
+        return IOUtils.toByteArray(is);
     }
 
-    private Single<JsonArray> historyComplete(long processInstanceId) {
-        return query("processInstanceHistoryComplete", new JsonObject().put("processInstanceId", processInstanceId));
+    private Single<JsonObject> watermark(String correlationKey) {
+        return this.<JsonObject>query("processInstanceWatermark", new JsonObject().put("correlationKey", correlationKey))
+                .map(result -> result.getJsonArray("result").getJsonObject(0));
     }
 
-    private Single<JsonArray> processVariables(long processInstanceId) {
-        return query("processInstanceVariableValues", new JsonObject().put("processInstanceId", processInstanceId));
+    private Single<InstanceView> processInstanceView(String correlationKey, boolean variables) {
+        return query("processInstanceView", new JsonObject().put("correlationKey", correlationKey).put("variables", variables));
     }
 
-    private Single<JsonArray> query(String name, JsonObject parameters) {
+    private <T> Single<T> query(String name, JsonObject parameters) {
         JsonObject json = new JsonObject()
                 .put("query", name)
                 .put("parameters", parameters);
-        return vertx.eventBus().<JsonObject>rxRequest("query", json)
-                .map(m -> m.body().getJsonArray("result"));
+        return vertx.eventBus().<T>rxRequest("query", json)
+                .map(Message::body);
     }
 }
@@ -0,0 +1,120 @@
+package com.redhat.cajun.navy.processviewer;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * View of a process instance: the instance, its node history, optionally its variables and, once rendered, its diagram.
+ *
+ * A view can also only carry an ETag, to signal that the view the client already has is unchanged.
+ */
+class InstanceView {
+
+    static final LocalMessageCodec<InstanceView> CODEC = new LocalMessageCodec<>(InstanceView.class,
+            InstanceView::toJson, InstanceView::fromJson);
+
+    private final ProcessInstance processInstance;
+
+    private final NodeHistory history;
+
+    private final ProcessVariables variables;
+
+    private final String image;
+
+    private final String etag;
+
+    private final boolean notModified;
+
+    private InstanceView(ProcessInstance processInstance, NodeHistory history, ProcessVariables variables,
+                         String image, String etag, boolean notModified) {
+        this.processInstance = processInstance;
+        this.history = history;
+        this.variables = variables;
+        this.image = image;
+        this.etag = etag;
+        this.notModified = notModified;
+    }
+
+    static InstanceView of(ProcessInstance processInstance, NodeHistory history, ProcessVariables variables) {
+        return new InstanceView(processInstance, history, variables, null, null, false);
+    }
+
+    static InstanceView notModified(String etag) {
+        return new InstanceView(null, null, null, null, etag, true);
+    }
+
+    InstanceView withImage(String image) {
+        return new InstanceView(processInstance, history, variables, image, etag, notModified);
+    }
+
+    InstanceView withEtag(String etag) {
+        return new InstanceView(processInstance, history, variables, image, etag, notModified);
+    }
+
+    /**
+     * ETag of a view: the process instance id and status, the highest node log id and, for views with variables, the
+     * highest log id of the allowlisted variables. A view carries the ETag of the rows it was built from; the same
+     * ETag is derived from the watermark of an unchanged instance.
+     */
+    static String etag(long processInstanceId, int status, long nodeLogId, Long variableLogId) {
+        StringBuilder sb = new StringBuilder("\"")
+                .append(processInstanceId).append('-')
+                .append(status).append('-')
+                .append(nodeLogId);
+        if (variableLogId != null) {
+            sb.append('-').append(variableLogId);
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * ETag from a <code>processInstanceWatermark</code> row.
+     */
+    static String etag(JsonObject watermark, boolean variables) {
+        return etag(watermark.getLong("processinstanceid"), watermark.getInteger("status"),
+                watermark.getLong("nodewatermark"), variables ? watermark.getLong("variablewatermark") : null);
+    }
+
+    static InstanceView fromJson(JsonObject json) {
+        JsonObject processInstance = json.getJsonObject("processInstance");
+        JsonObject history = json.getJsonObject("history");
+        JsonObject variables = json.getJsonObject("variables");
+        return new InstanceView(processInstance == null ? null : ProcessInstance.fromJson(processInstance),
+                history == null ? null : NodeHistory.fromJson(history),
+                variables == null ? null : ProcessVariables.fromJson(variables),
+                json.getString("image"), json.getString("etag"), json.getBoolean("notModified", false));
+    }
+
+    JsonObject toJson() {
+        return new JsonObject()
+                .put("processInstance", processInstance == null ? null : processInstance.toJson())
+                .put("history", history == null ? null : history.toJson())
+                .put("variables", variables == null ? null : variables.toJson())
+                .put("image", image)
+                .put("etag", etag)
+                .put("notModified", notModified);
+    }
+
+    ProcessInstance processInstance() {
+        return processInstance;
+    }
+
+    NodeHistory history() {
+        return history;
+    }
+
+    ProcessVariables variables() {
+        return variables;
+    }
+
+    String image() {
+        return image;
+    }
+
+    String etag() {
+        return etag;
+    }
+
+    boolean isNotModified() {
+        return notModified;
+    }
+}
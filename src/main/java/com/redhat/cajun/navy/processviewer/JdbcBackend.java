@@ -0,0 +1,66 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.Collections;
+import java.util.List;
+
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.ext.jdbc.JDBCClient;
+import io.vertx.reactivex.ext.sql.SQLConnection;
+import io.vertx.reactivex.ext.sql.SQLRowStream;
+
+/**
+ * Blocking JDBC backend: every statement runs on a worker thread and holds a pooled JDBC connection.
+ */
+class JdbcBackend implements SqlBackend {
+
+    private final JDBCClient jdbcClient;
+
+    JdbcBackend(Vertx vertx, JsonObject config) {
+        jdbcClient = JDBCClient.createShared(vertx, config, "dispatch-service");
+    }
+
+    @Override
+    public Single<SqlSession> connect() {
+        return jdbcClient.rxGetConnection().map(Session::new);
+    }
+
+    @Override
+    public void close() {
+        jdbcClient.close();
+    }
+
+    private static class Session implements SqlSession {
+
+        private final SQLConnection connection;
+
+        Session(SQLConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Single<List<JsonObject>> query(String sql, JsonArray params) {
+            return connection.rxQueryWithParams(sql, params)
+                    .map(rs -> rs.getRows() == null ? Collections.emptyList() : rs.getRows());
+        }
+
+        @Override
+        public Observable<JsonArray> queryStream(String sql, JsonArray params) {
+            return connection.rxQueryStreamWithParams(sql, params)
+                    .flatMapObservable(SQLRowStream::toObservable);
+        }
+
+        @Override
+        public boolean pipelined() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            connection.close();
+        }
+    }
+}
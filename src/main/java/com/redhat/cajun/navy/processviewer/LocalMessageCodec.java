@@ -0,0 +1,58 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.function.Function;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Event bus codec for immutable message types. Local delivery passes the instance itself, without copying or
+ * encoding; clustered delivery encodes the message as JSON.
+ */
+class LocalMessageCodec<T> implements MessageCodec<T, T> {
+
+    private final Class<T> type;
+
+    private final Function<T, JsonObject> toJson;
+
+    private final Function<JsonObject, T> fromJson;
+
+    LocalMessageCodec(Class<T> type, Function<T, JsonObject> toJson, Function<JsonObject, T> fromJson) {
+        this.type = type;
+        this.toJson = toJson;
+        this.fromJson = fromJson;
+    }
+
+    Class<T> type() {
+        return type;
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, T t) {
+        Buffer encoded = toJson.apply(t).toBuffer();
+        buffer.appendInt(encoded.length());
+        buffer.appendBuffer(encoded);
+    }
+
+    @Override
+    public T decodeFromWire(int pos, Buffer buffer) {
+        int length = buffer.getInt(pos);
+        return fromJson.apply(new JsonObject(buffer.getBuffer(pos + 4, pos + 4 + length)));
+    }
+
+    @Override
+    public T transform(T t) {
+        return t;
+    }
+
+    @Override
+    public String name() {
+        return type.getName();
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
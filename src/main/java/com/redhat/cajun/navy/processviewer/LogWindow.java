@@ -0,0 +1,67 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.TreeSet;
+
+/**
+ * Read position of the change poller in a log table. Ids are allocated when a row is inserted but become visible when
+ * its transaction commits, so a row can show up below a watermark that was already read past. Each poll therefore
+ * re-reads the last <code>lag</code> ids below the watermark, and the ids read in that window are remembered so that
+ * every row is passed on once.
+ *
+ * The window never reaches below the watermark the poller started from; rows committing later than <code>lag</code>
+ * ids behind are missed. Not thread safe, owned by a single verticle.
+ */
+class LogWindow {
+
+    private final long floor;
+
+    private final long lag;
+
+    private final TreeSet<Long> seen = new TreeSet<>();
+
+    private long watermark;
+
+    LogWindow(long watermark, long lag) {
+        this.floor = watermark;
+        this.lag = lag;
+        this.watermark = watermark;
+    }
+
+    long watermark() {
+        return watermark;
+    }
+
+    /**
+     * Id to read past.
+     */
+    long afterId() {
+        return Math.max(floor, watermark - lag);
+    }
+
+    /**
+     * Row limit that leaves room for <code>batchSize</code> unseen rows next to those re-read in the window.
+     */
+    int limit(int batchSize) {
+        return batchSize + seen.size();
+    }
+
+    /**
+     * Records a row read past {@link #afterId()}.
+     *
+     * @return whether the row was not seen before
+     */
+    boolean add(long id) {
+        if (!seen.add(id)) {
+            return false;
+        }
+        watermark = Math.max(watermark, id);
+        return true;
+    }
+
+    /**
+     * Forgets the ids that dropped out of the window, once a batch has been read.
+     */
+    void slide() {
+        seen.headSet(afterId(), true).clear();
+    }
+}
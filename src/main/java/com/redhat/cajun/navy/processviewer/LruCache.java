@@ -0,0 +1,42 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded map evicting the least recently used entry. Not thread safe: instances are confined to the verticle that owns them.
+ */
+class LruCache<K, V> {
+
+    private final int maxSize;
+
+    private final Map<K, V> entries;
+
+    LruCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > LruCache.this.maxSize;
+            }
+        };
+    }
+
+    boolean enabled() {
+        return maxSize > 0;
+    }
+
+    V get(K key) {
+        return entries.get(key);
+    }
+
+    V put(K key, V value) {
+        return entries.put(key, value);
+    }
+
+    V remove(K key) {
+        return entries.remove(key);
+    }
+}
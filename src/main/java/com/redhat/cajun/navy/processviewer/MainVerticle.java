@@ -1,19 +1,39 @@
 package com.redhat.cajun.navy.processviewer;
 
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
 import io.vertx.config.ConfigRetrieverOptions;
 import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
+import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.json.JsonObject;
 import io.vertx.reactivex.CompletableHelper;
 import io.vertx.reactivex.config.ConfigRetriever;
 import io.vertx.reactivex.core.AbstractVerticle;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.shareddata.LocalMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class MainVerticle extends AbstractVerticle {
 
+    private static final Logger log = LoggerFactory.getLogger(MainVerticle.class);
+
+    private static final String STATE = "process-viewer";
+
+    private static final String READY = "ready";
+
+    private static final String SEEDED = "seeded";
+
     @Override
     public void start(Future<Void> startFuture) throws Exception {
 
+        long start = System.nanoTime();
+
+        registerCodecs(vertx.eventBus().getDelegate());
+
         ConfigStoreOptions localStore = new ConfigStoreOptions().setType("file").setFormat("yaml")
                 .setConfig(new JsonObject()
                         .put("path", System.getProperty("vertx-config-path")));
@@ -35,12 +55,56 @@ public class MainVerticle extends AbstractVerticle {
         ConfigRetriever retriever = ConfigRetriever.create(vertx, options);
         retriever.rxGetConfig()
                 .flatMapCompletable(json -> {
-                    JsonObject datasource = json.getJsonObject("datasource");
+                    JsonObject datasource = json.getJsonObject("datasource").copy()
+                            .put("variables", json.getJsonObject("variables", new JsonObject()));
                     JsonObject http = json.getJsonObject("http");
-                    return vertx.rxDeployVerticle(RestApiVerticle.class.getName(), new DeploymentOptions().setConfig(http)).ignoreElement()
-                            .andThen(vertx.rxDeployVerticle(DbVerticle.class.getName(), new DeploymentOptions().setConfig(datasource))).ignoreElement()
-                            .andThen(vertx.rxDeployVerticle(ImageVerticle.class.getName())).ignoreElement();
+                    JsonObject image = json.getJsonObject("image", new JsonObject());
+                    JsonObject live = json.getJsonObject("live", new JsonObject());
+                    // the verticles warm up while they start; the change poller needs the database verticle
+                    return Completable.mergeArray(
+                            deploy(RestApiVerticle.class, deploymentOptions(http)),
+                            deploy(ImageVerticle.class, deploymentOptions(image)),
+                            deploy(DbVerticle.class, deploymentOptions(datasource))
+                                    .andThen(deploy(ChangePollerVerticle.class, new DeploymentOptions().setConfig(live))));
+                })
+                .doOnComplete(() -> {
+                    vertx.sharedData().<String, Boolean>getLocalMap(STATE).put(READY, true);
+                    log.info("Ready in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
                 })
                 .subscribe(CompletableHelper.toObserver(startFuture));
     }
+
+    /**
+     * Whether all verticles have started and warmed up, and the change poller has seeded its watermarks.
+     */
+    static boolean ready(Vertx vertx) {
+        LocalMap<String, Boolean> state = vertx.sharedData().<String, Boolean>getLocalMap(STATE);
+        return Boolean.TRUE.equals(state.get(READY)) && Boolean.TRUE.equals(state.get(SEEDED));
+    }
+
+    /**
+     * Marks the change poller as seeded, which it does after it has started, once the database could be read.
+     */
+    static void seeded(Vertx vertx) {
+        vertx.sharedData().<String, Boolean>getLocalMap(STATE).put(SEEDED, true);
+    }
+
+    private Completable deploy(Class<?> verticle, DeploymentOptions options) {
+        return vertx.rxDeployVerticle(verticle.getName(), options).ignoreElement();
+    }
+
+    private static DeploymentOptions deploymentOptions(JsonObject config) {
+        return new DeploymentOptions().setConfig(config).setInstances(config.getInteger("instances", 1));
+    }
+
+    private static void registerCodecs(EventBus eventBus) {
+        registerCodec(eventBus, ProcessInstance.CODEC);
+        registerCodec(eventBus, NodeHistory.CODEC);
+        registerCodec(eventBus, ProcessVariables.CODEC);
+        registerCodec(eventBus, InstanceView.CODEC);
+    }
+
+    private static <T> void registerCodec(EventBus eventBus, LocalMessageCodec<T> codec) {
+        eventBus.registerDefaultCodec(codec.type(), codec);
+    }
 }
@@ -0,0 +1,53 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.reactivex.Single;
+import io.reactivex.SingleTransformer;
+
+/**
+ * Meter registry shared by all verticles, scraped in the Prometheus format at <code>/metrics</code>.
+ *
+ * Stage latencies are timers with a percentile histogram, so quantiles are computed by Prometheus across instances
+ * and recording stays a few atomic increments.
+ */
+final class Metrics {
+
+    static final PrometheusMeterRegistry REGISTRY = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+    private Metrics() {
+    }
+
+    static Timer timer(String name, String... tags) {
+        return Timer.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(REGISTRY);
+    }
+
+    /**
+     * Times a single from subscription to its success or error, tagged with the outcome.
+     */
+    static <T> SingleTransformer<T, T> timed(String name, String... tags) {
+        return upstream -> Single.defer(() -> {
+            Timer.Sample sample = Timer.start(REGISTRY);
+            return upstream.doOnEvent((value, err) -> sample.stop(Timer.builder(name)
+                    .tags(Tags.of(tags).and("outcome", err == null ? "success" : "error"))
+                    .publishPercentileHistogram()
+                    .register(REGISTRY)));
+        });
+    }
+
+    static Counter counter(String name, String... tags) {
+        return REGISTRY.counter(name, tags);
+    }
+
+    static AtomicInteger gauge(String name, AtomicInteger value, String... tags) {
+        return REGISTRY.gauge(name, Tags.of(tags), value);
+    }
+}
@@ -0,0 +1,126 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Node history of a process instance, folded from the rows of <code>nodeinstancelog</code> in id order.
+ *
+ * A node instance is active as long as only its enter row has been seen. A node instance is completed once its exit row
+ * is seen; node instances closed with another type (e.g. aborted) are neither active nor completed.
+ * Active nodes carry the date they were entered, completed nodes the date they were exited.
+ * Once folded, a history is not modified anymore and can be sent over the event bus as is.
+ */
+class NodeHistory {
+
+    static final LocalMessageCodec<NodeHistory> CODEC = new LocalMessageCodec<>(NodeHistory.class,
+            NodeHistory::toJson, NodeHistory::fromJson);
+
+    static final int TYPE_ENTER = 0;
+
+    static final int TYPE_EXIT = 1;
+
+    private final Map<String, Node> active = new LinkedHashMap<>();
+
+    private final Set<String> closed = new HashSet<>();
+
+    private final List<Node> completed = new ArrayList<>();
+
+    private long lastId;
+
+    /**
+     * Folds a row, recording its log id as the highest one seen.
+     */
+    NodeHistory add(long id, String nodeInstanceId, String nodeId, int type, String date) {
+        lastId = Math.max(lastId, id);
+        return add(nodeInstanceId, nodeId, type, date);
+    }
+
+    NodeHistory add(String nodeInstanceId, String nodeId, int type, String date) {
+        if (type == TYPE_ENTER) {
+            if (!closed.contains(nodeInstanceId)) {
+                active.put(nodeInstanceId, new Node(nodeInstanceId, nodeId, date));
+            }
+        } else {
+            active.remove(nodeInstanceId);
+            closed.add(nodeInstanceId);
+            if (type == TYPE_EXIT) {
+                completed.add(new Node(nodeInstanceId, nodeId, date));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Node ids of the active node instances, in the order they were entered.
+     */
+    List<String> active() {
+        return active.values().stream().map(n -> n.nodeId).collect(Collectors.toList());
+    }
+
+    /**
+     * Node ids of the completed node instances, in the order they were exited.
+     */
+    List<String> completed() {
+        return completed.stream().map(n -> n.nodeId).collect(Collectors.toList());
+    }
+
+    /**
+     * Highest <code>nodeinstancelog</code> id folded into the history, 0 when none was recorded.
+     */
+    long lastId() {
+        return lastId;
+    }
+
+    static NodeHistory fromJson(JsonObject json) {
+        NodeHistory history = new NodeHistory();
+        history.lastId = json.getLong("lastId", 0L);
+        json.getJsonArray("active").forEach(o -> {
+            Node node = Node.fromJson((JsonObject) o);
+            history.active.put(node.nodeInstanceId, node);
+        });
+        json.getJsonArray("completed").forEach(o -> history.completed.add(Node.fromJson((JsonObject) o)));
+        return history;
+    }
+
+    JsonObject toJson() {
+        return new JsonObject()
+                .put("active", new JsonArray(active.values().stream().map(Node::toJson).collect(Collectors.toList())))
+                .put("completed", new JsonArray(completed.stream().map(Node::toJson).collect(Collectors.toList())))
+                .put("lastId", lastId);
+    }
+
+    private static class Node {
+
+        private final String nodeInstanceId;
+
+        private final String nodeId;
+
+        private final String date;
+
+        Node(String nodeInstanceId, String nodeId, String date) {
+            this.nodeInstanceId = nodeInstanceId;
+            this.nodeId = nodeId;
+            this.date = date;
+        }
+
+        static Node fromJson(JsonObject json) {
+            return new Node(json.getString("nodeInstanceId"), json.getString("nodeId"), json.getString("date"));
+        }
+
+        JsonObject toJson() {
+            return new JsonObject()
+                    .put("nodeInstanceId", nodeInstanceId)
+                    .put("nodeId", nodeId)
+                    .put("date", date);
+        }
+    }
+}
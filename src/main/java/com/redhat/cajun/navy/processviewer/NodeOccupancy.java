@@ -0,0 +1,84 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Number of active node instances per node of each process definition, across all process instances.
+ *
+ * The aggregate is seeded with the open node instances of the active process instances, and then folded incrementally
+ * from <code>nodeinstancelog</code> rows in id order: an enter row opens a node instance, any other row closes it.
+ * Process instances leave the aggregate as their last node instance is closed. The owner replaces the aggregate by a
+ * freshly seeded one from time to time, which corrects rows folded out of order. Not thread safe, owned by a single verticle.
+ */
+class NodeOccupancy {
+
+    private final Map<Long, Map<String, String>> open = new HashMap<>();
+
+    private final Map<Long, String> processIds = new HashMap<>();
+
+    private final Map<String, Map<String, Integer>> counts = new HashMap<>();
+
+    /**
+     * Aggregate seeded from <code>openNodeInstances</code> rows, each an open node instance of an active process instance.
+     */
+    static NodeOccupancy fromOpenNodeInstances(JsonArray rows) {
+        NodeOccupancy occupancy = new NodeOccupancy();
+        rows.forEach(o -> {
+            JsonObject row = (JsonObject) o;
+            occupancy.add(row.getLong("processinstanceid"), row.getString("processid"),
+                    row.getString("nodeinstanceid"), row.getString("nodeid"), NodeHistory.TYPE_ENTER);
+        });
+        return occupancy;
+    }
+
+    void add(long processInstanceId, String processId, String nodeInstanceId, String nodeId, int type) {
+        if (type == NodeHistory.TYPE_ENTER) {
+            Map<String, String> nodes = open.computeIfAbsent(processInstanceId, id -> new HashMap<>());
+            if (nodes.putIfAbsent(nodeInstanceId, nodeId) == null) {
+                processIds.put(processInstanceId, processId);
+                counts.computeIfAbsent(processId, id -> new HashMap<>()).merge(nodeId, 1, Integer::sum);
+            }
+        } else {
+            Map<String, String> nodes = open.get(processInstanceId);
+            String openNodeId = nodes == null ? null : nodes.remove(nodeInstanceId);
+            if (openNodeId == null) {
+                return;
+            }
+            Map<String, Integer> processCounts = counts.get(processIds.get(processInstanceId));
+            if (processCounts.merge(openNodeId, -1, Integer::sum) == 0) {
+                processCounts.remove(openNodeId);
+            }
+            if (nodes.isEmpty()) {
+                open.remove(processInstanceId);
+                processIds.remove(processInstanceId);
+            }
+        }
+    }
+
+    /**
+     * Number of active node instances per node id of the process definition.
+     */
+    Map<String, Integer> counts(String processId) {
+        return new HashMap<>(counts.getOrDefault(processId, new HashMap<>()));
+    }
+
+    /**
+     * Number of process instances of the process definition with at least one active node instance.
+     */
+    long instances(String processId) {
+        return processIds.values().stream().filter(processId::equals).count();
+    }
+
+    JsonObject toJson(String processId) {
+        JsonObject nodes = new JsonObject();
+        counts(processId).forEach(nodes::put);
+        return new JsonObject()
+                .put("processId", processId)
+                .put("instances", instances(processId))
+                .put("nodes", nodes);
+    }
+}
@@ -0,0 +1,162 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.pgclient.PgPool;
+import io.vertx.reactivex.sqlclient.Row;
+import io.vertx.reactivex.sqlclient.SqlConnection;
+import io.vertx.reactivex.sqlclient.Transaction;
+import io.vertx.reactivex.sqlclient.Tuple;
+import io.vertx.sqlclient.PoolOptions;
+
+/**
+ * Non-blocking backend on the reactive PostgreSQL client. Statements are prepared once per connection and cached, and
+ * queries issued together, such as the history and variables of an instance view, are pipelined on the connection.
+ *
+ * The connection is derived from the JDBC settings (<code>jdbcUrl</code>, <code>principal</code>, <code>credential</code>);
+ * the <code>pg</code> object configures the pool size, the pipelining limit and the fetch size of streamed queries.
+ * Values are converted like the JDBC backend does: timestamps become ISO-8601 instants in UTC.
+ */
+class PgBackend implements SqlBackend {
+
+    private static final String JDBC_PREFIX = "jdbc:";
+
+    private final PgPool pool;
+
+    private final int fetchSize;
+
+    PgBackend(Vertx vertx, JsonObject config) {
+        JsonObject pg = config.getJsonObject("pg", new JsonObject());
+        String url = config.getString("jdbcUrl");
+        PgConnectOptions connectOptions = PgConnectOptions.fromUri(url.startsWith(JDBC_PREFIX) ? url.substring(JDBC_PREFIX.length()) : url)
+                .setUser(config.getString("principal"))
+                .setPassword(config.getString("credential"))
+                .setCachePreparedStatements(true)
+                .setPipeliningLimit(pg.getInteger("pipeliningLimit", 256));
+        PoolOptions poolOptions = new PoolOptions().setMaxSize(pg.getInteger("maxSize", 4));
+        pool = PgPool.pool(vertx, connectOptions, poolOptions);
+        fetchSize = pg.getInteger("fetchSize", 500);
+    }
+
+    @Override
+    public Single<SqlSession> connect() {
+        return pool.rxGetConnection().map(Session::new);
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    /**
+     * Rewrites <code>?</code> placeholders, outside of string literals, to PostgreSQL's numbered placeholders.
+     */
+    static String placeholders(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length() + 16);
+        boolean literal = false;
+        int index = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                literal = !literal;
+            }
+            if (c == '?' && !literal) {
+                sb.append('$').append(++index);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Tuple tuple(JsonArray params) {
+        Tuple tuple = Tuple.tuple();
+        params.forEach(tuple::addValue);
+        return tuple;
+    }
+
+    private static Object value(Object value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value;
+        } else if (value instanceof LocalDateTime) {
+            return DateTimeFormatter.ISO_INSTANT.format(((LocalDateTime) value).atZone(ZoneId.systemDefault()));
+        } else if (value instanceof OffsetDateTime) {
+            return DateTimeFormatter.ISO_INSTANT.format((OffsetDateTime) value);
+        } else {
+            return value.toString();
+        }
+    }
+
+    private static JsonObject toJsonObject(Row row) {
+        JsonObject json = new JsonObject();
+        for (int i = 0; i < row.size(); i++) {
+            json.put(row.getColumnName(i), value(row.getValue(i)));
+        }
+        return json;
+    }
+
+    private static JsonArray toJsonArray(Row row) {
+        JsonArray json = new JsonArray();
+        for (int i = 0; i < row.size(); i++) {
+            json.add(value(row.getValue(i)));
+        }
+        return json;
+    }
+
+    private class Session implements SqlSession {
+
+        private final SqlConnection connection;
+
+        Session(SqlConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Single<List<JsonObject>> query(String sql, JsonArray params) {
+            return connection.rxPreparedQuery(placeholders(sql), tuple(params))
+                    .map(rowSet -> {
+                        List<JsonObject> rows = new ArrayList<>(rowSet.size());
+                        rowSet.forEach(row -> rows.add(toJsonObject(row)));
+                        return rows;
+                    });
+        }
+
+        /**
+         * Streams through a cursor, which PostgreSQL only keeps open within a transaction. The transaction is committed
+         * before the stream completes, so that a query issued on completion runs after it rather than being rejected.
+         */
+        @Override
+        public Observable<JsonArray> queryStream(String sql, JsonArray params) {
+            return Observable.defer(() -> {
+                Transaction tx = connection.begin();
+                return connection.rxPrepare(placeholders(sql))
+                        .flatMapObservable(pq -> pq.createStream(fetchSize, tuple(params)).toObservable())
+                        .map(PgBackend::toJsonArray)
+                        .concatWith(tx.rxCommit())
+                        .doOnError(err -> tx.rollback())
+                        .doOnDispose(tx::rollback);
+            });
+        }
+
+        @Override
+        public boolean pipelined() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            connection.close();
+        }
+    }
+}
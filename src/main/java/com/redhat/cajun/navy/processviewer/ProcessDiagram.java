@@ -0,0 +1,317 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jbpm.process.svg.SVGImageProcessor;
+
+/**
+ * Process definition diagram, loaded once per process id.
+ *
+ * The SVG is indexed on load: for every node the offsets of the style attributes of its background and border shapes
+ * are recorded. Borders are either stroked or filled shapes, depending on the node type. An instance view is rendered by splicing the new attribute values into the
+ * prebuilt template, which avoids parsing the document for every request.
+ * Diagrams that are not in the Stunner format (no indexable nodes) fall back to {@link SVGImageProcessor}.
+ * The same slots render the heatmap of a process definition, with a count label inserted after the background shape,
+ * which is drawn in the coordinates of its node.
+ */
+class ProcessDiagram {
+
+    static final String COMPLETED_NODE_COLOR = "#C0C0C0";
+
+    static final String COMPLETED_NODE_BORDER_COLOR = "#030303";
+
+    static final String ACTIVE_NODE_BORDER_COLOR = "#FF0000";
+
+    static final String NODE_BORDER_WIDTH = "2";
+
+    static final int[] HEATMAP_LOW_COLOR = {0xFF, 0xF3, 0xE0};
+
+    static final int[] HEATMAP_HIGH_COLOR = {0xD3, 0x2F, 0x2F};
+
+    private static final Pattern PROLOG = Pattern.compile("<\\?.*\\?>");
+
+    private static final Pattern WIDTH = Pattern.compile("width=\"[0-9]*\"");
+
+    private static final Pattern HEIGHT = Pattern.compile("height=\"[0-9]*\"");
+
+    private static final Pattern SHAPE_ID = Pattern.compile("\\sid=\"([^\"?]+)\\?shapeType=(BACKGROUND|BORDER&amp;renderType=STROKE|BORDER&amp;renderType=FILL)\"");
+
+    private final String processId;
+
+    private final String svg;
+
+    private final String template;
+
+    private final String etag;
+
+    private final Slot[] slots;
+
+    private final Map<String, NodeSlots> nodes;
+
+    private ProcessDiagram(String processId, String svg, String template, Slot[] slots, Map<String, NodeSlots> nodes) {
+        this.processId = processId;
+        this.svg = svg;
+        this.template = template;
+        this.etag = "\"" + processId + "-" + Integer.toHexString(svg.hashCode()) + "\"";
+        this.slots = slots;
+        this.nodes = nodes;
+    }
+
+    static ProcessDiagram load(String processId, byte[] bytes) {
+        String svg = new String(bytes, StandardCharsets.UTF_8);
+        String template = fixup(svg);
+        List<Slot> slots = new ArrayList<>();
+        Map<String, NodeSlots> nodes = new HashMap<>();
+        Matcher matcher = SHAPE_ID.matcher(template);
+        while (matcher.find()) {
+            int tagStart = template.lastIndexOf('<', matcher.start());
+            int tagEnd = template.indexOf('>', matcher.end());
+            if (tagStart < 0 || tagEnd < 0) {
+                continue;
+            }
+            NodeSlots node = nodes.computeIfAbsent(matcher.group(1), k -> new NodeSlots());
+            if ("BACKGROUND".equals(matcher.group(2))) {
+                node.fill = slot(template, tagStart, tagEnd, "fill", slots);
+                if (template.charAt(tagEnd - 1) == '/') {
+                    node.label = new Slot(null, tagEnd + 1, tagEnd + 1, false);
+                    slots.add(node.label);
+                }
+            } else if (matcher.group(2).endsWith("FILL")) {
+                node.borderFill = slot(template, tagStart, tagEnd, "fill", slots);
+            } else {
+                node.stroke = slot(template, tagStart, tagEnd, "stroke", slots);
+                node.strokeWidth = slot(template, tagStart, tagEnd, "stroke-width", slots);
+            }
+        }
+        slots.sort(Comparator.comparingInt(s -> s.start));
+        Slot[] ordered = slots.toArray(new Slot[0]);
+        for (int i = 0; i < ordered.length; i++) {
+            ordered[i].index = i;
+        }
+        return new ProcessDiagram(processId, svg, template, ordered, nodes);
+    }
+
+    /**
+     * Applies the fixups for embedding the diagram in a page: drops the XML prolog and scales the diagram to a fixed width.
+     * The first match of each fixup is located in the original document and the result is built in a single copy.
+     */
+    static String fixup(String svg) {
+        List<Edit> edits = new ArrayList<>(3);
+        Matcher prolog = PROLOG.matcher(svg);
+        Edit removed = null;
+        if (prolog.find()) {
+            removed = new Edit(prolog.start(), prolog.end(), "");
+            edits.add(removed);
+        }
+        edit(WIDTH.matcher(svg), "width=\"1080\"", removed, edits);
+        edit(HEIGHT.matcher(svg), "height=\"auto\"", removed, edits);
+        edits.sort(Comparator.comparingInt(e -> e.start));
+        StringBuilder sb = new StringBuilder(svg.length());
+        int position = 0;
+        for (Edit edit : edits) {
+            sb.append(svg, position, edit.start).append(edit.replacement);
+            position = edit.end;
+        }
+        return sb.append(svg, position, svg.length()).toString();
+    }
+
+    /**
+     * Records the replacement of the first match outside of the removed prolog.
+     */
+    private static void edit(Matcher matcher, String replacement, Edit removed, List<Edit> edits) {
+        while (matcher.find()) {
+            if (removed == null || matcher.end() <= removed.start || matcher.start() >= removed.end) {
+                edits.add(new Edit(matcher.start(), matcher.end(), replacement));
+                return;
+            }
+        }
+    }
+
+    private static Slot slot(String template, int tagStart, int tagEnd, String attribute, List<Slot> slots) {
+        Matcher matcher = Pattern.compile("\\s" + Pattern.quote(attribute) + "=\"([^\"]*)\"")
+                .matcher(template).region(tagStart, tagEnd);
+        Slot slot;
+        if (matcher.find()) {
+            slot = new Slot(attribute, matcher.start(1), matcher.end(1), true);
+        } else {
+            int nameEnd = tagStart + 1;
+            while (nameEnd < tagEnd && !Character.isWhitespace(template.charAt(nameEnd)) && template.charAt(nameEnd) != '/') {
+                nameEnd++;
+            }
+            slot = new Slot(attribute, nameEnd, nameEnd, false);
+        }
+        slots.add(slot);
+        return slot;
+    }
+
+    String processId() {
+        return processId;
+    }
+
+    /**
+     * The diagram as stored in the process definition, without instance state.
+     */
+    String svg() {
+        return svg;
+    }
+
+    /**
+     * ETag of the process definition diagram, derived from its content.
+     */
+    String etag() {
+        return etag;
+    }
+
+    boolean indexed() {
+        return !nodes.isEmpty();
+    }
+
+    /**
+     * Renders the diagram of a process instance. Must only be called on indexed diagrams.
+     */
+    String render(Collection<String> completed, Collection<String> active) {
+        String[] values = new String[slots.length];
+        Set<String> activeNodes = new HashSet<>(active);
+        for (String nodeId : completed) {
+            NodeSlots node = nodes.get(nodeId);
+            if (node != null && !activeNodes.contains(nodeId)) {
+                node.set(values, node.fill, COMPLETED_NODE_COLOR);
+                node.set(values, node.stroke, COMPLETED_NODE_BORDER_COLOR);
+                node.set(values, node.borderFill, COMPLETED_NODE_BORDER_COLOR);
+                node.set(values, node.strokeWidth, NODE_BORDER_WIDTH);
+            }
+        }
+        for (String nodeId : activeNodes) {
+            NodeSlots node = nodes.get(nodeId);
+            if (node != null) {
+                node.set(values, node.stroke, ACTIVE_NODE_BORDER_COLOR);
+                node.set(values, node.borderFill, ACTIVE_NODE_BORDER_COLOR);
+                node.set(values, node.strokeWidth, NODE_BORDER_WIDTH);
+            }
+        }
+        return splice(values);
+    }
+
+    /**
+     * Renders the occupancy of a process definition: nodes are filled with a colour whose intensity grows with the
+     * number of active node instances, and labelled with that number. Must only be called on indexed diagrams.
+     */
+    String heatmap(Map<String, Integer> counts) {
+        String[] values = new String[slots.length];
+        int max = counts.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+        counts.forEach((nodeId, count) -> {
+            NodeSlots node = nodes.get(nodeId);
+            if (node != null && count > 0) {
+                node.set(values, node.fill, heatmapColor((double) count / max));
+                node.set(values, node.label, "<text x=\"6\" y=\"18\" font-family=\"sans-serif\" font-size=\"14\" " +
+                        "font-weight=\"bold\" fill=\"#000000\">" + count + "</text>");
+            }
+        });
+        return splice(values);
+    }
+
+    private static String heatmapColor(double intensity) {
+        StringBuilder sb = new StringBuilder("#");
+        for (int i = 0; i < 3; i++) {
+            int channel = (int) Math.round(HEATMAP_LOW_COLOR[i] + (HEATMAP_HIGH_COLOR[i] - HEATMAP_LOW_COLOR[i]) * intensity);
+            sb.append(String.format("%02X", channel));
+        }
+        return sb.toString();
+    }
+
+    private String splice(String[] values) {
+        StringBuilder sb = new StringBuilder(template.length() + 64);
+        int position = 0;
+        for (int i = 0; i < slots.length; i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            Slot slot = slots[i];
+            sb.append(template, position, slot.start);
+            if (slot.attribute == null) {
+                sb.append(values[i]);
+            } else if (slot.present) {
+                sb.append(values[i]);
+            } else {
+                sb.append(' ').append(slot.attribute).append("=\"").append(values[i]).append('"');
+            }
+            position = slot.end;
+        }
+        return sb.append(template, position, template.length()).toString();
+    }
+
+    /**
+     * Renders the diagram of a process instance with the jBPM SVG processor, for diagrams that could not be indexed.
+     * This parses the whole document and should be called on a worker thread.
+     */
+    String transform(List<String> completed, List<String> active) {
+        String image = SVGImageProcessor.transform(new ByteArrayInputStream(svg.getBytes(StandardCharsets.UTF_8)),
+                completed, active, new HashMap<>());
+        return fixup(image);
+    }
+
+    private static class Slot {
+
+        private final String attribute;
+
+        private final int start;
+
+        private final int end;
+
+        private final boolean present;
+
+        private int index;
+
+        Slot(String attribute, int start, int end, boolean present) {
+            this.attribute = attribute;
+            this.start = start;
+            this.end = end;
+            this.present = present;
+        }
+    }
+
+    private static class Edit {
+
+        private final int start;
+
+        private final int end;
+
+        private final String replacement;
+
+        Edit(int start, int end, String replacement) {
+            this.start = start;
+            this.end = end;
+            this.replacement = replacement;
+        }
+    }
+
+    private static class NodeSlots {
+
+        private Slot fill;
+
+        private Slot stroke;
+
+        private Slot strokeWidth;
+
+        private Slot borderFill;
+
+        private Slot label;
+
+        void set(String[] values, Slot slot, String value) {
+            if (slot != null) {
+                values[slot.index] = value;
+            }
+        }
+    }
+}
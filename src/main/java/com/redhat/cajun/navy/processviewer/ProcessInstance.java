@@ -0,0 +1,95 @@
+package com.redhat.cajun.navy.processviewer;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Process instance as logged in <code>processinstancelog</code>. The JSON representation uses the column names.
+ */
+class ProcessInstance {
+
+    static final LocalMessageCodec<ProcessInstance> CODEC = new LocalMessageCodec<>(ProcessInstance.class,
+            ProcessInstance::toJson, ProcessInstance::fromJson);
+
+    static final int STATUS_ACTIVE = 1;
+
+    static final int STATUS_COMPLETED = 2;
+
+    static final int STATUS_ABORTED = 3;
+
+    private final long processInstanceId;
+
+    private final String correlationKey;
+
+    private final String processId;
+
+    private final int status;
+
+    private final String startDate;
+
+    private final String endDate;
+
+    private final Long duration;
+
+    private ProcessInstance(long processInstanceId, String correlationKey, String processId, int status,
+                            String startDate, String endDate, Long duration) {
+        this.processInstanceId = processInstanceId;
+        this.correlationKey = correlationKey;
+        this.processId = processId;
+        this.status = status;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.duration = duration;
+    }
+
+    static ProcessInstance fromJson(JsonObject row) {
+        return new ProcessInstance(row.getLong("processinstanceid"), row.getString("correlationkey"),
+                row.getString("processid"), row.getInteger("status"), row.getString("start_date"),
+                row.getString("end_date"), row.getLong("duration"));
+    }
+
+    JsonObject toJson() {
+        return new JsonObject()
+                .put("processinstanceid", processInstanceId)
+                .put("correlationkey", correlationKey)
+                .put("processid", processId)
+                .put("status", status)
+                .put("start_date", startDate)
+                .put("end_date", endDate)
+                .put("duration", duration);
+    }
+
+    long processInstanceId() {
+        return processInstanceId;
+    }
+
+    String correlationKey() {
+        return correlationKey;
+    }
+
+    String processId() {
+        return processId;
+    }
+
+    int status() {
+        return status;
+    }
+
+    String startDate() {
+        return startDate;
+    }
+
+    String endDate() {
+        return endDate;
+    }
+
+    Long duration() {
+        return duration;
+    }
+
+    /**
+     * Completed and aborted instances never change again.
+     */
+    boolean finalized() {
+        return status == STATUS_COMPLETED || status == STATUS_ABORTED;
+    }
+}
@@ -0,0 +1,67 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Latest values of the variables of a process instance, by variable id. Values read from the log also carry the highest
+ * log id among them, which is not part of the JSON representation.
+ */
+class ProcessVariables {
+
+    static final LocalMessageCodec<ProcessVariables> CODEC = new LocalMessageCodec<>(ProcessVariables.class,
+            ProcessVariables::toJson, ProcessVariables::fromJson);
+
+    private final Map<String, String> values;
+
+    private final long lastId;
+
+    private ProcessVariables(Map<String, String> values, long lastId) {
+        this.values = Collections.unmodifiableMap(values);
+        this.lastId = lastId;
+    }
+
+    /**
+     * From <code>variableinstancelog</code> rows, holding at most one row per variable id.
+     */
+    static ProcessVariables fromRows(Collection<JsonObject> rows) {
+        Map<String, String> values = new HashMap<>();
+        long lastId = 0;
+        for (JsonObject row : rows) {
+            values.put(row.getString("variableid"), row.getString("value"));
+            lastId = Math.max(lastId, row.getLong("id", 0L));
+        }
+        return new ProcessVariables(values, lastId);
+    }
+
+    static ProcessVariables fromJson(JsonObject json) {
+        Map<String, String> values = new HashMap<>();
+        json.forEach(e -> values.put(e.getKey(), (String) e.getValue()));
+        return new ProcessVariables(values, 0);
+    }
+
+    JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        values.forEach(json::put);
+        return json;
+    }
+
+    /**
+     * Highest <code>variableinstancelog</code> id among the values, 0 when unknown.
+     */
+    long lastId() {
+        return lastId;
+    }
+
+    /**
+     * The value of the variable, or an empty string if the variable or its value is missing.
+     */
+    String value(String variableId) {
+        String value = values.get(variableId);
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,66 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Timer;
+import io.reactivex.Single;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.WorkerExecutor;
+
+/**
+ * Named worker pool for rendering diagrams, shared by all verticle instances, with a bound on the number of pending
+ * tasks. Tasks submitted while the pool is saturated fail immediately with a {@link RejectedExecutionException}.
+ * The number of pending tasks and the time tasks wait for a worker are exposed as metrics.
+ */
+class RenderPool {
+
+    private static final Map<String, AtomicInteger> pending = new ConcurrentHashMap<>();
+
+    private final WorkerExecutor executor;
+
+    private final AtomicInteger tasks;
+
+    private final int maxTasks;
+
+    private final Timer queueWait;
+
+    RenderPool(Vertx vertx, String name, int poolSize, int maxQueue) {
+        this.executor = vertx.createSharedWorkerExecutor(name, poolSize);
+        this.tasks = pending.computeIfAbsent(name, n -> Metrics.gauge("render.pool.pending", new AtomicInteger(), "pool", n));
+        this.maxTasks = poolSize + maxQueue;
+        this.queueWait = Metrics.timer("render.pool.wait", "pool", name);
+    }
+
+    <T> Single<T> execute(Callable<T> task) {
+        return Single.defer(() -> {
+            if (tasks.incrementAndGet() > maxTasks) {
+                tasks.decrementAndGet();
+                return Single.error(new RejectedExecutionException("Render pool saturated"));
+            }
+            Timer.Sample queued = Timer.start(Metrics.REGISTRY);
+            return executor.<T>rxExecuteBlocking(future -> {
+                queued.stop(queueWait);
+                try {
+                    future.complete(task.call());
+                } catch (Exception e) {
+                    future.fail(e);
+                }
+            }, false).toSingle().doFinally(tasks::decrementAndGet);
+        });
+    }
+
+    /**
+     * Number of tasks queued or running.
+     */
+    int pending() {
+        return tasks.get();
+    }
+
+    void close() {
+        executor.close();
+    }
+}
@@ -1,31 +1,59 @@
 package com.redhat.cajun.navy.processviewer;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.TemporalAccessor;
-import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.micrometer.core.instrument.Timer;
+import io.prometheus.client.exporter.common.TextFormat;
 import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.healthchecks.Status;
 import io.vertx.reactivex.core.AbstractVerticle;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.core.eventbus.Message;
+import io.vertx.reactivex.core.eventbus.MessageConsumer;
+import io.vertx.reactivex.core.http.HttpServerResponse;
 import io.vertx.reactivex.ext.healthchecks.HealthCheckHandler;
 import io.vertx.reactivex.ext.web.Router;
 import io.vertx.reactivex.ext.web.RoutingContext;
+import io.vertx.reactivex.ext.web.handler.BodyHandler;
 import io.vertx.reactivex.ext.web.templ.freemarker.FreeMarkerTemplateEngine;
 
 public class RestApiVerticle extends AbstractVerticle {
 
+    private static final int CHUNK_SIZE = 16 * 1024;
+
     FreeMarkerTemplateEngine engine;
 
-    DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    LruCache<String, Buffer> pageHeaders;
+
+    Buffer pageFooter;
+
+    int retryAfter;
+
+    String diagramCacheControl;
 
-    DateTimeFormatter dtf2 = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.S'Z'");
+    long sseHeartbeat;
+
+    int bulkMaxKeys;
+
+    int listPageSize;
 
     @Override
     public Completable rxStart() {
@@ -35,44 +63,383 @@ public class RestApiVerticle extends AbstractVerticle {
     private Completable initializeHttpServer(JsonObject config) {
 
         engine = FreeMarkerTemplateEngine.create(vertx);
+        pageHeaders = new LruCache<>(config.getInteger("cacheSize", 0));
+        retryAfter = config.getInteger("retryAfter", 1);
+        diagramCacheControl = "public, max-age=" + config.getInteger("diagramMaxAge", 86400);
+        sseHeartbeat = config.getLong("sseHeartbeat", 15000L);
+        bulkMaxKeys = config.getInteger("bulkMaxKeys", 200);
+        listPageSize = config.getInteger("listPageSize", 500);
 
         Router router = Router.router(vertx);
+        router.route().handler(rc -> {
+            Timer.Sample sample = Timer.start(Metrics.REGISTRY);
+            rc.addBodyEndHandler(v -> sample.stop(Metrics.timer("http.server.requests",
+                    "method", rc.request().rawMethod(), "status", Integer.toString(rc.response().getStatusCode()))));
+            rc.next();
+        });
 
         HealthCheckHandler healthCheckHandler = HealthCheckHandler.create(vertx)
                 .register("health", f -> f.complete(Status.OK()));
+        HealthCheckHandler readinessHandler = HealthCheckHandler.create(vertx)
+                .register("warmup", f -> f.complete(MainVerticle.ready(vertx) ? Status.OK() : Status.KO()));
         router.get("/health").handler(healthCheckHandler);
+        router.get("/ready").handler(readinessHandler);
+        router.get("/metrics").handler(rc -> rc.response()
+                .putHeader("content-type", TextFormat.CONTENT_TYPE_004)
+                .end(Metrics.REGISTRY.scrape()));
         router.get("/image/process/:processId").handler(this::processImage);
         router.get("/image/process/instance/:correlationKey").handler(this::processInstanceImage);
         router.get("/data/process/instance/:correlationKey").handler(this::processInstanceData);
+        router.post("/data/process/instances").handler(BodyHandler.create(false).setBodyLimit(64 * 1024));
+        router.post("/data/process/instances").handler(this::processInstancesData);
+        router.get("/overlay/process/instance/:correlationKey").handler(this::processInstanceOverlay);
+        router.get("/heatmap/process/:processId").handler(this::processHeatmap);
+        router.get("/process/instances").handler(this::processInstances);
+        router.get("/events/process/instance/:correlationKey").handler(this::processInstanceEvents);
 
-        return vertx.createHttpServer()
-                .requestHandler(router)
-                .rxListen(config.getInteger("port", 8080))
+        return compileTemplates()
+                .andThen(vertx.createHttpServer()
+                        .requestHandler(router)
+                        .rxListen(config.getInteger("port", 8080)))
                 .ignoreElement();
     }
 
+    /**
+     * Renders the page templates once before listening: the footer is kept, and rendering the header for an empty
+     * instance leaves it compiled in the template engine cache.
+     */
+    private Completable compileTemplates() {
+        InstanceView empty = InstanceView.of(ProcessInstance.fromJson(new JsonObject()
+                        .put("processinstanceid", 0L).put("correlationkey", "").put("processid", "").put("status", 0)),
+                new NodeHistory(), ProcessVariables.fromRows(Collections.emptyList()));
+        return Completable.mergeArray(
+                engine.rxRender(new JsonObject(), "templates/process-data-footer.ftl")
+                        .doOnSuccess(footer -> pageFooter = footer)
+                        .ignoreElement(),
+                engine.rxRender(processData(empty), "templates/process-data-header.ftl")
+                        .ignoreElement());
+    }
+
+    /**
+     * The process definition diagram only changes with a new deployment, so clients can cache it.
+     */
     private void processImage(RoutingContext rc) {
         String processId = rc.pathParam("processId");
         JsonObject json = new JsonObject().put("processId", processId);
-        vertx.eventBus().<JsonObject>rxRequest("process-image", json)
-                .map(m -> new JsonObject().put("image", m.body().getString("image")))
-                .subscribe((result) -> rc.response().setStatusCode(200)
+        String ifNoneMatch = rc.request().getHeader("If-None-Match");
+        this.<JsonObject>request("process-image", json)
+                .map(Message::body)
+                .subscribe((result) -> {
+                            String etag = result.getString("etag");
+                            if (ETags.matches(ifNoneMatch, etag)) {
+                                rc.response().setStatusCode(304)
+                                        .putHeader("ETag", etag)
+                                        .putHeader("Cache-Control", diagramCacheControl)
+                                        .end();
+                            } else {
+                                rc.response().setStatusCode(200)
                                         .putHeader("content-type", "image/svg+xml")
-                                        .end(result.getString("image")),
+                                        .putHeader("ETag", etag)
+                                        .putHeader("Cache-Control", diagramCacheControl)
+                                        .end(result.getString("image"));
+                            }
+                        },
                         rc::fail);
     }
 
-    private void processInstanceImage(RoutingContext rc) {
+    /**
+     * Lists process instances in id order as newline delimited JSON, filtered by process id, status and start and
+     * end date range. The listing is read in keyset pages of <code>listPageSize</code> instances; the next page is only
+     * read once the previous one was written to the client, so the response never holds more than a page.
+     * A listing that was cut short can be resumed with <code>after</code> set to the last instance id received.
+     */
+    private void processInstances(RoutingContext rc) {
+        JsonObject filter = new JsonObject();
+        long limit;
+        try {
+            filter.put("afterId", Long.parseLong(param(rc, "after", "0")));
+            limit = Long.parseLong(param(rc, "limit", Long.toString(Long.MAX_VALUE)));
+            if (limit < 0) {
+                throw new IllegalArgumentException("limit must not be negative");
+            }
+            filter.put("processId", rc.request().getParam("processId"));
+            if (rc.request().getParam("status") != null) {
+                filter.put("status", statusCode(rc.request().getParam("status")));
+            }
+            filter.put("startedFrom", dateParam(rc, "startedFrom"));
+            filter.put("startedTo", dateParam(rc, "startedTo"));
+            filter.put("endedFrom", dateParam(rc, "endedFrom"));
+            filter.put("endedTo", dateParam(rc, "endedTo"));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            rc.response().setStatusCode(400).end(e.getMessage());
+            return;
+        }
+        HttpServerResponse response = rc.response();
+        response.setStatusCode(200)
+                .setChunked(true)
+                .putHeader("content-type", "application/x-ndjson")
+                .putHeader("Cache-Control", "no-cache");
+        boolean[] closed = {false};
+        response.closeHandler(v -> closed[0] = true);
+        processInstancesPage(response, filter, limit, closed);
+    }
+
+    private void processInstancesPage(HttpServerResponse response, JsonObject filter, long remaining, boolean[] closed) {
+        int limit = (int) Math.min(listPageSize, remaining);
+        JsonObject json = new JsonObject()
+                .put("query", "processInstancePage")
+                .put("parameters", filter.copy().put("limit", limit));
+        this.<JsonObject>request("query", json)
+                .map(Message::body)
+                .subscribe((result) -> {
+                            if (closed[0]) {
+                                return;
+                            }
+                            JsonArray rows = result.getJsonArray("result");
+                            Buffer chunk = Buffer.buffer();
+                            for (int i = 0; i < rows.size(); i++) {
+                                JsonArray row = rows.getJsonArray(i);
+                                chunk.appendString(new JsonObject()
+                                        .put("instanceId", row.getLong(0))
+                                        .put("correlationKey", row.getString(1))
+                                        .put("processId", row.getString(2))
+                                        .put("status", status(row.getInteger(3)))
+                                        .put("startDate", row.getString(4))
+                                        .put("endDate", row.getString(5))
+                                        .put("duration", row.getLong(6))
+                                        .encode()).appendString("\n");
+                                filter.put("afterId", row.getLong(0));
+                            }
+                            if (rows.size() < limit || remaining == rows.size()) {
+                                response.end(chunk);
+                                return;
+                            }
+                            response.write(chunk);
+                            if (response.writeQueueFull()) {
+                                response.drainHandler(v -> processInstancesPage(response, filter, remaining - rows.size(), closed));
+                            } else {
+                                processInstancesPage(response, filter, remaining - rows.size(), closed);
+                            }
+                        },
+                        // the status line is already sent, closing the connection tells the client the listing is incomplete
+                        (err) -> response.close());
+    }
+
+    private static String param(RoutingContext rc, String name, String defaultValue) {
+        String value = rc.request().getParam(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Date parameters are ISO dates or date-times, in UTC unless they carry an offset, like the dates listed.
+     * The log columns hold local date-times, which are listed as UTC instants in the JVM time zone; the filter is
+     * converted back to a local date-time in that same zone.
+     */
+    private static String dateParam(RoutingContext rc, String name) {
+        String value = rc.request().getParam(name);
+        if (value == null) {
+            return null;
+        }
+        Instant instant;
+        if (value.length() == 10) {
+            instant = LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+        } else {
+            TemporalAccessor dateTime = DateTimeFormatter.ISO_DATE_TIME.parseBest(value, ZonedDateTime::from, LocalDateTime::from);
+            instant = dateTime instanceof ZonedDateTime ? ((ZonedDateTime) dateTime).toInstant()
+                    : ((LocalDateTime) dateTime).toInstant(ZoneOffset.UTC);
+        }
+        return LocalDateTime.ofInstant(instant, ZoneId.systemDefault()).toString();
+    }
+
+    private static int statusCode(String status) {
+        switch (status.toLowerCase()) {
+            case "pending":
+                return 0;
+            case "active":
+                return 1;
+            case "completed":
+                return 2;
+            case "aborted":
+                return 3;
+            case "suspended":
+                return 4;
+            default:
+                return Integer.parseInt(status);
+        }
+    }
+
+    /**
+     * Process diagram coloured by the number of active process instances waiting in each node.
+     * With <code>Accept: application/json</code> only the counts are returned.
+     */
+    private void processHeatmap(RoutingContext rc) {
+        String processId = rc.pathParam("processId");
+        JsonObject json = new JsonObject().put("processId", processId);
+        boolean counts = String.valueOf(rc.request().getHeader("Accept")).startsWith("application/json");
+        this.<JsonObject>request("process-heatmap", json)
+                .map(Message::body)
+                .subscribe((result) -> {
+                            if (counts) {
+                                result.remove("image");
+                                rc.response().setStatusCode(200)
+                                        .putHeader("content-type", "application/json")
+                                        .putHeader("Cache-Control", "no-cache")
+                                        .end(result.encode());
+                            } else {
+                                rc.response().setStatusCode(200)
+                                        .putHeader("content-type", "image/svg+xml")
+                                        .putHeader("Cache-Control", "no-cache")
+                                        .end(result.getString("image"));
+                            }
+                        },
+                        (err) -> {
+                            if (err instanceof ReplyException && ((ReplyException)err).failureCode() == 503) {
+                                serviceUnavailable(rc);
+                            } else {
+                                rc.fail(err);
+                            }
+                        });
+    }
+
+    /**
+     * Active and completed nodes of a process instance, for clients that apply them to the cached process diagram.
+     */
+    private void processInstanceOverlay(RoutingContext rc) {
+        overlay(rc.pathParam("correlationKey"))
+                .subscribe((result) -> rc.response().setStatusCode(200)
+                                .putHeader("content-type", "application/json")
+                                .putHeader("Cache-Control", "no-cache")
+                                .end(overlay(result).encode()),
+                        (err) -> {
+                            if (err instanceof ReplyException && ((ReplyException)err).failureCode() == 1) {
+                                rc.response().setStatusCode(404).end();
+                            } else {
+                                rc.fail(err);
+                            }
+                        });
+    }
+
+    private JsonObject overlay(InstanceView view) {
+        ProcessInstance processInstance = view.processInstance();
+        JsonObject history = view.history().toJson();
+        return new JsonObject()
+                .put("correlationKey", processInstance.correlationKey())
+                .put("instanceId", processInstance.processInstanceId())
+                .put("processId", processInstance.processId())
+                .put("status", status(processInstance.status()))
+                .put("active", history.getJsonArray("active"))
+                .put("completed", history.getJsonArray("completed"));
+    }
+
+    /**
+     * Streams the node and variable changes of a process instance as server-sent events.
+     *
+     * The stream starts with a <code>state</code> event holding the overlay of the instance, followed by
+     * <code>nodes</code> and <code>variables</code> events as the change poller picks up new log rows. The subscription
+     * is made before the state is read and changes that arrive in between are held back, so no change is lost;
+     * clients apply node changes by node instance id, which makes a change that is also part of the state harmless.
+     * The stream ends with the state event for instances that are already completed or aborted.
+     */
+    private void processInstanceEvents(RoutingContext rc) {
         String correlationKey = rc.pathParam("correlationKey");
+        JsonObject json = new JsonObject()
+                .put("query", "processInstanceByCorrelationKey")
+                .put("parameters", new JsonObject().put("correlationKey", correlationKey));
+        this.<ProcessInstance>request("query", json)
+                .map(Message::body)
+                .subscribe((result) -> stream(rc, result),
+                        (err) -> {
+                            if (err instanceof ReplyException && ((ReplyException)err).failureCode() == 1) {
+                                rc.response().setStatusCode(404).end();
+                            } else {
+                                rc.fail(err);
+                            }
+                        });
+    }
+
+    private void stream(RoutingContext rc, ProcessInstance processInstance) {
+        HttpServerResponse response = rc.response();
+        response.setStatusCode(200)
+                .setChunked(true)
+                .putHeader("content-type", "text/event-stream")
+                .putHeader("Cache-Control", "no-cache");
+        if (processInstance.finalized()) {
+            overlay(processInstance.correlationKey())
+                    .subscribe((result) -> response.end(event("state", overlay(result))), rc::fail);
+            return;
+        }
+        List<String> pending = new ArrayList<>();
+        boolean[] started = {false};
+        MessageConsumer<JsonObject> consumer = vertx.eventBus().consumer(ChangePollerVerticle.CHANGES_ADDRESS + processInstance.processInstanceId(), m -> {
+            String events = changeEvents(m.body());
+            if (!started[0]) {
+                pending.add(events);
+            } else if (response.writeQueueFull()) {
+                // a client that does not keep up is dropped rather than buffered without bound
+                response.close();
+            } else {
+                response.write(events);
+            }
+        });
+        long heartbeat = vertx.setPeriodic(sseHeartbeat, t -> response.write(":\n\n"));
+        response.closeHandler(v -> {
+            consumer.unregister();
+            vertx.cancelTimer(heartbeat);
+        });
+        consumer.rxCompletionHandler()
+                .andThen(overlay(processInstance.correlationKey()))
+                .subscribe((result) -> {
+                            response.write(event("state", overlay(result)));
+                            pending.forEach(response::write);
+                            pending.clear();
+                            started[0] = true;
+                        },
+                        (err) -> response.close());
+    }
+
+    private Single<InstanceView> overlay(String correlationKey) {
         JsonObject json = new JsonObject().put("correlationKey", correlationKey);
-        vertx.eventBus().<JsonObject>rxRequest("process-instance-image", json)
-                .map(m -> new JsonObject().put("image", m.body().getString("image")))
-                .subscribe((result) -> rc.response().setStatusCode(200)
+        return this.<InstanceView>request("process-instance-overlay", json)
+                .map(Message::body);
+    }
+
+    private String changeEvents(JsonObject changes) {
+        StringBuilder sb = new StringBuilder();
+        if (!changes.getJsonArray("nodes").isEmpty()) {
+            sb.append(event("nodes", new JsonObject().put("nodes", changes.getJsonArray("nodes"))));
+        }
+        if (!changes.getJsonArray("variables").isEmpty()) {
+            sb.append(event("variables", new JsonObject().put("variables", changes.getJsonArray("variables"))));
+        }
+        return sb.toString();
+    }
+
+    private static String event(String name, JsonObject data) {
+        return "event: " + name + "\ndata: " + data.encode() + "\n\n";
+    }
+
+    private void processInstanceImage(RoutingContext rc) {
+        String correlationKey = rc.pathParam("correlationKey");
+        JsonObject json = new JsonObject().put("correlationKey", correlationKey)
+                .put("ifNoneMatch", rc.request().getHeader("If-None-Match"));
+        this.<InstanceView>request("process-instance-image", json)
+                .map(Message::body)
+                .subscribe((result) -> {
+                            if (result.isNotModified()) {
+                                notModified(rc, result.etag());
+                            } else {
+                                rc.response().setStatusCode(200)
                                         .putHeader("content-type", "image/svg+xml")
-                                        .end(result.getString("image")),
+                                        .putHeader("ETag", result.etag())
+                                        .putHeader("Cache-Control", "no-cache")
+                                        .end(result.image());
+                            }
+                        },
                         (err) -> {
                             if (err instanceof ReplyException && ((ReplyException)err).failureCode() == 1) {
                                 rc.response().setStatusCode(404).end();
+                            } else if (err instanceof ReplyException && ((ReplyException)err).failureCode() == 503) {
+                                serviceUnavailable(rc);
                             } else {
                                 rc.fail(err);
                             }
@@ -81,16 +448,34 @@ public class RestApiVerticle extends AbstractVerticle {
 
     private void processInstanceData(RoutingContext rc) {
         String correlationKey = rc.pathParam("correlationKey");
-        JsonObject json = new JsonObject().put("correlationKey", correlationKey);
-        vertx.eventBus().<JsonObject>rxRequest("process-instance-data", json)
-                .map(m -> transformProcessData(m.body()))
-                .flatMap(ctx -> engine.rxRender(ctx, "templates/process-data.ftl"))
-                .subscribe((result) -> rc.response().setStatusCode(200)
-                                .putHeader("content-type", "text/html")
-                                .end(result),
+        JsonObject json = new JsonObject().put("correlationKey", correlationKey)
+                .put("ifNoneMatch", rc.request().getHeader("If-None-Match"));
+        this.<InstanceView>request("process-instance-data", json)
+                .map(Message::body)
+                .flatMapCompletable(result -> {
+                    String etag = result.etag();
+                    if (result.isNotModified()) {
+                        notModified(rc, etag);
+                        return Completable.complete();
+                    }
+                    return pageHeader(result)
+                            .doOnSuccess(header -> {
+                                HttpServerResponse response = rc.response().setStatusCode(200)
+                                        .setChunked(true)
+                                        .putHeader("content-type", "text/html")
+                                        .putHeader("ETag", etag)
+                                        .putHeader("Cache-Control", "no-cache")
+                                        .write(header);
+                                write(response, result.image(), 0, () -> response.end(pageFooter));
+                            })
+                            .ignoreElement();
+                })
+                .subscribe(() -> {},
                         (err) -> {
                             if (err instanceof ReplyException && ((ReplyException)err).failureCode() == 1) {
                                 rc.response().setStatusCode(404).end();
+                            } else if (err instanceof ReplyException && ((ReplyException)err).failureCode() == 503) {
+                                serviceUnavailable(rc);
                             } else {
                                 err.printStackTrace();
                                 rc.fail(err);
@@ -98,30 +483,142 @@ public class RestApiVerticle extends AbstractVerticle {
                         });
     }
 
-    private JsonObject transformProcessData(JsonObject data) {
+    /**
+     * Node state and process data of a set of process instances, posted as a JSON array of correlation keys.
+     * The whole set is resolved with a handful of queries, which suits clients showing many instances at once.
+     */
+    private void processInstancesData(RoutingContext rc) {
+        Set<String> correlationKeys = new LinkedHashSet<>();
+        try {
+            rc.getBodyAsJsonArray().forEach(key -> correlationKeys.add(key.toString()));
+        } catch (DecodeException | ClassCastException | NullPointerException e) {
+            rc.response().setStatusCode(400).end("Expected a JSON array of correlation keys");
+            return;
+        }
+        if (correlationKeys.size() > bulkMaxKeys) {
+            rc.response().setStatusCode(400).end("At most " + bulkMaxKeys + " correlation keys are allowed");
+            return;
+        }
+        JsonObject json = new JsonObject()
+                .put("query", "processInstanceViews")
+                .put("parameters", new JsonObject()
+                        .put("correlationKeys", new JsonArray(new ArrayList<>(correlationKeys)))
+                        .put("variables", true));
+        this.<JsonObject>request("query", json)
+                .map(Message::body)
+                .subscribe((result) -> {
+                            JsonArray instances = new JsonArray();
+                            result.getJsonArray("result").forEach(o -> {
+                                InstanceView view = InstanceView.fromJson((JsonObject) o);
+                                JsonObject history = view.history().toJson();
+                                instances.add(processData(view)
+                                        .put("active", history.getJsonArray("active"))
+                                        .put("completed", history.getJsonArray("completed")));
+                                correlationKeys.remove(view.processInstance().correlationKey());
+                            });
+                            rc.response().setStatusCode(200)
+                                    .putHeader("content-type", "application/json")
+                                    .putHeader("Cache-Control", "no-cache")
+                                    .end(new JsonObject()
+                                            .put("instances", instances)
+                                            .put("notFound", new JsonArray(new ArrayList<>(correlationKeys)))
+                                            .encode());
+                        },
+                        rc::fail);
+    }
 
-        DateTimeFormatter out = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    /**
+     * Renders the part of the data page before the diagram, or takes it from the cache when the instance is unchanged
+     * since it was rendered. The page is sent as this header, the diagram and the static footer, so the diagram is
+     * never copied into a rendered page.
+     */
+    private Single<Buffer> pageHeader(InstanceView data) {
+        String etag = data.etag();
+        Buffer header = pageHeaders.get(etag);
+        if (header != null) {
+            return Single.just(header);
+        }
+        return engine.rxRender(processData(data), "templates/process-data-header.ftl")
+                .compose(Metrics.timed("template.render", "template", "process-data"))
+                .doOnSuccess(b -> {
+                    if (pageHeaders.enabled()) {
+                        pageHeaders.put(etag, b);
+                    }
+                });
+    }
 
-        String mission = getVariableValue(data.getJsonArray("variables"), "mission");
-        String incident = getVariableValue(data.getJsonArray("variables"), "incident");
+    /**
+     * Writes text to a chunked response in chunks of {@link #CHUNK_SIZE} characters, waiting for the response to
+     * drain when its write queue is full, then runs <code>done</code>.
+     */
+    private static void write(HttpServerResponse response, String text, int offset, Runnable done) {
+        int position = offset;
+        while (position < text.length()) {
+            if (response.closed()) {
+                return;
+            }
+            if (response.writeQueueFull()) {
+                int resume = position;
+                response.drainHandler(v -> write(response, text, resume, done));
+                return;
+            }
+            int end = Math.min(position + CHUNK_SIZE, text.length());
+            if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end--;
+            }
+            response.write(text.substring(position, end));
+            position = end;
+        }
+        done.run();
+    }
+
+    /**
+     * Event bus request, timed per address from the request to the reply.
+     */
+    private <T> Single<Message<T>> request(String address, JsonObject json) {
+        return vertx.eventBus().<T>rxRequest(address, json)
+                .compose(Metrics.timed("eventbus.request", "address", address));
+    }
+
+    private void serviceUnavailable(RoutingContext rc) {
+        rc.response().setStatusCode(503)
+                .putHeader("Retry-After", Integer.toString(retryAfter))
+                .end();
+    }
+
+    private void notModified(RoutingContext rc, String etag) {
+        rc.response().setStatusCode(304)
+                .putHeader("ETag", etag)
+                .putHeader("Cache-Control", "no-cache")
+                .end();
+    }
+
+    /**
+     * Fields of the data page, from the process instance and the mission and incident variables.
+     */
+    static JsonObject processData(InstanceView data) {
+
+        ProcessInstance processInstance = data.processInstance();
+        ProcessVariables variables = data.variables();
+        VariableParser.Mission mission = VariableParser.mission(variables.value("mission"));
+        VariableParser.Incident incident = VariableParser.incident(variables.value("incident"));
 
         return new JsonObject()
-                .put("correlationKey", data.getString("correlationkey"))
-                .put("instanceId", Long.toString(data.getLong("processinstanceid")))
-                .put("processId", data.getString("processid"))
-                .put("status", status(data.getInteger("status")))
-                .put("startDate", out.format(LocalDateTime.from(parse(data.getString("start_date")))))
-                .put("endDate", data.getString("end_date") == null ? "" : out.format(LocalDateTime.from(parse(data.getString("end_date")))))
-                .put("duration", data.getLong("duration") == null ? "" : data.getLong("duration") / 1000)
-                .put("assignments_retries", getVariableValue(data.getJsonArray("variables"), "nrAssignments"))
-                .put("responder_id", match(".*responderId=([0-9]*),", mission))
-                .put("incident_location", coordinates(".*latitude=([-+]?[0-9.]*),",".*longitude=([-+]?[0-9.]*),", incident))
-                .put("responder_location",coordinates(".*responderLat=([-+]?[0-9.]*),",".*responderLong=([-+]?[0-9.]*),", mission))
-                .put("destination_location",coordinates(".*destinationLat=([-+]?[0-9.]*),",".*destinationLong=([-+]?[0-9.]*),", mission))
-                .put("image", data.getString("image"));
-    }
-
-    private String status(int status) {
+                .put("correlationKey", processInstance.correlationKey())
+                .put("instanceId", Long.toString(processInstance.processInstanceId()))
+                .put("processId", processInstance.processId())
+                .put("status", status(processInstance.status()))
+                .put("startDate", VariableParser.formatDate(processInstance.startDate()))
+                .put("endDate", VariableParser.formatDate(processInstance.endDate()))
+                .put("duration", processInstance.duration() == null ? "" : processInstance.duration() / 1000)
+                .put("assignments_retries", variables.value("nrAssignments"))
+                .put("responder_id", mission.responderId())
+                .put("incident_location", incident.location())
+                .put("responder_location", mission.responderLocation())
+                .put("destination_location", mission.destinationLocation());
+    }
+
+    static String status(int status) {
         switch (status) {
             case 0:
                 return "Pending";
@@ -138,50 +635,4 @@ public class RestApiVerticle extends AbstractVerticle {
 
         }
     }
-
-    private String getVariableValue(JsonArray array, String id) {
-
-        return Optional.ofNullable(array)
-                .orElse(new JsonArray())
-                .stream().filter(o -> o instanceof JsonObject)
-                .map(o -> (JsonObject)o)
-                .filter(o -> id.equals(o.getString("variableid")))
-                .map(j -> Optional.ofNullable(j.getString("value")))
-                .findFirst()
-                .orElse(Optional.of(""))
-                .orElse("");
-    }
-
-    private String match(String pattern, String text) {
-        Pattern p = Pattern.compile(pattern);
-        Matcher matcher = p.matcher(text);
-        if (matcher.find()) {
-            return matcher.group(1);
-        } else {
-            return "";
-        }
-    }
-
-    private String coordinates(String patternLat, String patternLon, String text) {
-        String lat = match(patternLat, text);
-        String lon = match(patternLon, text);
-        if (lat.isEmpty() || lon.isEmpty()) {
-            return "";
-        } else {
-            return lat + "," + lon;
-        }
-    }
-
-    private TemporalAccessor parse(String date) {
-        TemporalAccessor ta;
-        try {
-            ta = dtf.parse(date);
-        } catch (DateTimeParseException e) {
-            ta = dtf2.parse(date);
-        }
-        return ta;
-    }
-
-
-
 }
@@ -0,0 +1,44 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import io.micrometer.core.instrument.Counter;
+import io.reactivex.Single;
+
+/**
+ * Shares one pending computation between concurrent callers for the same key: a caller arriving while a computation
+ * for its key is in flight subscribes to that computation instead of starting another one, and receives its result
+ * or error. The key is forgotten as soon as the computation completes, so nothing is cached beyond it.
+ *
+ * Not thread safe: instances are confined to the verticle that owns them, whose computations complete on its event
+ * loop. Callers that joined a pending computation are counted in <code>singleflight.coalesced</code>.
+ * Coalescing is therefore per verticle instance: a verticle deployed with several instances runs up to one
+ * computation per key in each of them.
+ */
+class SingleFlight<K, V> {
+
+    private final Map<K, Single<V>> pending = new HashMap<>();
+
+    private final Counter coalesced;
+
+    SingleFlight(String name) {
+        this.coalesced = Metrics.counter("singleflight.coalesced", "name", name);
+    }
+
+    Single<V> execute(K key, Callable<Single<V>> computation) {
+        return Single.defer(() -> {
+            Single<V> inFlight = pending.get(key);
+            if (inFlight != null) {
+                coalesced.increment();
+                return inFlight;
+            }
+            Single<V> shared = computation.call()
+                    .doFinally(() -> pending.remove(key))
+                    .cache();
+            pending.put(key, shared);
+            return shared;
+        });
+    }
+}
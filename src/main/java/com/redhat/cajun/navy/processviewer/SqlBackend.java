@@ -0,0 +1,28 @@
+package com.redhat.cajun.navy.processviewer;
+
+import io.reactivex.Single;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+
+/**
+ * Database access used by {@link DbVerticle}, selected with the <code>backend</code> key of the datasource configuration:
+ * <code>jdbc</code> (default) or <code>pg</code> for the reactive PostgreSQL client.
+ */
+interface SqlBackend {
+
+    Single<SqlSession> connect();
+
+    void close();
+
+    static SqlBackend create(Vertx vertx, JsonObject config) {
+        String backend = config.getString("backend", "jdbc");
+        switch (backend) {
+            case "jdbc":
+                return new JdbcBackend(vertx, config);
+            case "pg":
+                return new PgBackend(vertx, config);
+            default:
+                throw new IllegalArgumentException("Unknown datasource backend " + backend);
+        }
+    }
+}
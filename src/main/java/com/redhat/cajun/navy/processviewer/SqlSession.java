@@ -0,0 +1,32 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.List;
+
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Database connection. Statements use <code>?</code> placeholders.
+ */
+interface SqlSession {
+
+    /**
+     * Rows as JSON objects keyed by column name.
+     */
+    Single<List<JsonObject>> query(String sql, JsonArray params);
+
+    /**
+     * Rows as JSON arrays in column order, streamed without materializing the result.
+     */
+    Observable<JsonArray> queryStream(String sql, JsonArray params);
+
+    /**
+     * Whether queries may be issued while others are running, the connection pipelining them; otherwise a query must
+     * complete before the next one is issued.
+     */
+    boolean pipelined();
+
+    void close();
+}
@@ -0,0 +1,161 @@
+package com.redhat.cajun.navy.processviewer;
+
+/**
+ * Extracts fields from the <code>toString</code> representation of the <code>mission</code> and <code>incident</code>
+ * process variables, e.g. <code>Mission [id=..., responderId=12, responderLat=34.21, ...]</code>, and formats log dates.
+ *
+ * Each variable is scanned once: at every <code>=</code> the preceding text is compared with the wanted keys and the
+ * value is read up to the next comma. As with the regular expressions this replaces, the last occurrence of a key wins
+ * and a value only counts when it is followed by a comma. Nothing here throws on malformed input.
+ */
+final class VariableParser {
+
+    private static final String[] MISSION_KEYS = {"responderId", "responderLat", "responderLong", "destinationLat", "destinationLong"};
+
+    private static final boolean[] MISSION_COORDINATES = {false, true, true, true, true};
+
+    private static final String[] INCIDENT_KEYS = {"latitude", "longitude"};
+
+    private static final boolean[] INCIDENT_COORDINATES = {true, true};
+
+    private static final int[] DATE_DIGITS = {0, 1, 2, 3, 5, 6, 8, 9, 11, 12, 14, 15, 17, 18};
+
+    private VariableParser() {
+    }
+
+    static Mission mission(String text) {
+        String[] values = extract(text, MISSION_KEYS, MISSION_COORDINATES);
+        return new Mission(values[0], values[1], values[2], values[3], values[4]);
+    }
+
+    static Incident incident(String text) {
+        String[] values = extract(text, INCIDENT_KEYS, INCIDENT_COORDINATES);
+        return new Incident(values[0], values[1]);
+    }
+
+    /**
+     * Formats an ISO instant as logged (<code>yyyy-MM-ddTHH:mm:ss[.fraction]Z</code>, with zero to nine fraction
+     * digits) as <code>yyyy-MM-dd HH:mm:ss</code>. Returns an empty string for a missing or malformed date.
+     */
+    static String formatDate(String date) {
+        if (date == null || date.length() < 19 || date.charAt(4) != '-' || date.charAt(7) != '-' || date.charAt(10) != 'T'
+                || date.charAt(13) != ':' || date.charAt(16) != ':') {
+            return "";
+        }
+        for (int i : DATE_DIGITS) {
+            if (!isDigit(date.charAt(i))) {
+                return "";
+            }
+        }
+        int i = 19;
+        if (i < date.length() && date.charAt(i) == '.') {
+            i++;
+            int fraction = i;
+            while (i < date.length() && isDigit(date.charAt(i))) {
+                i++;
+            }
+            if (i == fraction || i - fraction > 9) {
+                return "";
+            }
+        }
+        if (i < date.length() && date.charAt(i) == 'Z') {
+            i++;
+        }
+        if (i != date.length()) {
+            return "";
+        }
+        return new StringBuilder(19).append(date, 0, 10).append(' ').append(date, 11, 19).toString();
+    }
+
+    /**
+     * Values of the keys, or empty strings. Coordinates are signed decimals, other values are unsigned integers.
+     */
+    private static String[] extract(String text, String[] keys, boolean[] coordinates) {
+        String[] values = new String[keys.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = "";
+        }
+        if (text == null) {
+            return values;
+        }
+        int length = text.length();
+        for (int eq = text.indexOf('='); eq >= 0; eq = text.indexOf('=', eq + 1)) {
+            for (int k = 0; k < keys.length; k++) {
+                String key = keys[k];
+                int start = eq - key.length();
+                if (start < 0 || !text.regionMatches(start, key, 0, key.length())) {
+                    continue;
+                }
+                int end = eq + 1;
+                if (coordinates[k] && end < length && (text.charAt(end) == '-' || text.charAt(end) == '+')) {
+                    end++;
+                }
+                while (end < length && (isDigit(text.charAt(end)) || coordinates[k] && text.charAt(end) == '.')) {
+                    end++;
+                }
+                if (end < length && text.charAt(end) == ',') {
+                    values[k] = text.substring(eq + 1, end);
+                }
+                break;
+            }
+        }
+        return values;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static String coordinates(String lat, String lon) {
+        return lat.isEmpty() || lon.isEmpty() ? "" : lat + "," + lon;
+    }
+
+    static final class Mission {
+
+        private final String responderId;
+
+        private final String responderLat;
+
+        private final String responderLong;
+
+        private final String destinationLat;
+
+        private final String destinationLong;
+
+        Mission(String responderId, String responderLat, String responderLong, String destinationLat, String destinationLong) {
+            this.responderId = responderId;
+            this.responderLat = responderLat;
+            this.responderLong = responderLong;
+            this.destinationLat = destinationLat;
+            this.destinationLong = destinationLong;
+        }
+
+        String responderId() {
+            return responderId;
+        }
+
+        String responderLocation() {
+            return coordinates(responderLat, responderLong);
+        }
+
+        String destinationLocation() {
+            return coordinates(destinationLat, destinationLong);
+        }
+    }
+
+    static final class Incident {
+
+        private final String latitude;
+
+        private final String longitude;
+
+        Incident(String latitude, String longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        String location() {
+            return coordinates(latitude, longitude);
+        }
+    }
+}
@@ -0,0 +1,3 @@
+</body>
+
+</html>
\ No newline at end of file
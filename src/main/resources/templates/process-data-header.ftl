@@ -48,9 +48,3 @@
     </tr>
   </tbody>
 </table>
-
-${image}
-
-</body>
-
-</html>
\ No newline at end of file
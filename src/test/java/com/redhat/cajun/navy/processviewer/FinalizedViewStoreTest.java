@@ -0,0 +1,105 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.io.File;
+import java.util.Arrays;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FinalizedViewStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static JsonObject processInstance(int status) {
+        return new JsonObject()
+                .put("processinstanceid", 42L)
+                .put("correlationkey", "incident-1")
+                .put("processid", "incident-process")
+                .put("status", status)
+                .put("start_date", "2019-07-11T13:20:15Z");
+    }
+
+    private static JsonObject variable(long id, String variableId, String value) {
+        return new JsonObject().put("id", id).put("variableid", variableId).put("value", value);
+    }
+
+    /**
+     * Builds a view the way the composite view query does, from the rows it read.
+     */
+    private static InstanceView view(int status) {
+        ProcessInstance processInstance = ProcessInstance.fromJson(processInstance(status));
+        NodeHistory history = new NodeHistory()
+                .add(10, "1", "_start", NodeHistory.TYPE_ENTER, "2019-07-11T13:20:15Z")
+                .add(11, "1", "_start", NodeHistory.TYPE_EXIT, "2019-07-11T13:20:16Z")
+                .add(12, "2", "_end", NodeHistory.TYPE_ENTER, "2019-07-11T13:20:17Z");
+        ProcessVariables variables = ProcessVariables.fromRows(Arrays.asList(
+                variable(7, "mission", "Mission [id=1]"), variable(5, "incident", "Incident [id=1]")));
+        return InstanceView.of(processInstance, history, variables)
+                .withEtag(InstanceView.etag(processInstance.processInstanceId(), processInstance.status(),
+                        history.lastId(), variables.lastId()))
+                .withImage("<svg/>");
+    }
+
+    @Test
+    public void viewEtagMatchesTheWatermarkOfTheRowsItWasBuiltFrom() {
+        JsonObject watermark = new JsonObject()
+                .put("processinstanceid", 42L)
+                .put("status", ProcessInstance.STATUS_COMPLETED)
+                .put("nodewatermark", 12L)
+                .put("variablewatermark", 7L);
+        assertEquals(InstanceView.etag(watermark, true), view(ProcessInstance.STATUS_COMPLETED).etag());
+        assertEquals("\"42-2-12\"", InstanceView.etag(watermark, false));
+    }
+
+    @Test
+    public void finalizedViewIsServedWithItsEtagAfterReopening() throws Exception {
+        String path = new File(folder.getRoot(), "views/segment").getPath();
+        InstanceView view = view(ProcessInstance.STATUS_COMPLETED);
+        assertTrue(view.processInstance().finalized());
+
+        FinalizedViewStore store = FinalizedViewStore.open(path);
+        store.put("data/incident-1", view.toJson());
+        store.close();
+
+        FinalizedViewStore reopened = FinalizedViewStore.open(path);
+        try {
+            assertTrue(reopened.contains("data/incident-1"));
+            assertFalse(reopened.contains("image/incident-1"));
+            InstanceView stored = InstanceView.fromJson(reopened.get("data/incident-1"));
+            JsonObject watermark = new JsonObject()
+                    .put("processinstanceid", 42L)
+                    .put("status", ProcessInstance.STATUS_COMPLETED)
+                    .put("nodewatermark", 12L)
+                    .put("variablewatermark", 7L);
+            assertEquals(InstanceView.etag(watermark, true), stored.etag());
+            assertEquals(view.etag(), stored.etag());
+            assertEquals("<svg/>", stored.image());
+            assertEquals(view.history().active(), stored.history().active());
+            assertEquals(view.history().completed(), stored.history().completed());
+            assertEquals(ProcessInstance.STATUS_COMPLETED, stored.processInstance().status());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void firstStoredViewOfAKeyIsKept() throws Exception {
+        String path = new File(folder.getRoot(), "segment").getPath();
+        FinalizedViewStore store = FinalizedViewStore.open(path);
+        try {
+            store.put("data/incident-1", view(ProcessInstance.STATUS_COMPLETED).toJson());
+            store.put("data/incident-1", view(ProcessInstance.STATUS_ABORTED).toJson());
+            assertEquals(ProcessInstance.STATUS_COMPLETED,
+                    InstanceView.fromJson(store.get("data/incident-1")).processInstance().status());
+        } finally {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.redhat.cajun.navy.processviewer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogWindowTest {
+
+    @Test
+    public void readsPastTheStartingWatermarkUntilTheLagIsFilled() {
+        LogWindow window = new LogWindow(1000, 100);
+        assertEquals(1000, window.afterId());
+        assertTrue(window.add(1001));
+        assertTrue(window.add(1050));
+        window.slide();
+        assertEquals(1050, window.watermark());
+        assertEquals(1000, window.afterId());
+        assertTrue(window.add(1200));
+        window.slide();
+        assertEquals(1100, window.afterId());
+    }
+
+    @Test
+    public void idCommittedOutOfOrderInsideTheLagIsPassedOnOnce() {
+        LogWindow window = new LogWindow(0, 100);
+        assertTrue(window.add(500));
+        assertTrue(window.add(502));
+        window.slide();
+        assertEquals(402, window.afterId());
+
+        // 501 commits after 502 was read; the next poll re-reads 500 and 502 next to it
+        assertFalse(window.add(500));
+        assertTrue(window.add(501));
+        assertFalse(window.add(502));
+        window.slide();
+        assertEquals(502, window.watermark());
+
+        assertFalse(window.add(501));
+    }
+
+    @Test
+    public void windowNeverReachesBelowTheStartingWatermark() {
+        LogWindow window = new LogWindow(1000, 100);
+        assertTrue(window.add(1010));
+        window.slide();
+        assertEquals(1000, window.afterId());
+    }
+
+    @Test
+    public void slideForgetsIdsThatDroppedOutOfTheWindow() {
+        LogWindow window = new LogWindow(0, 10);
+        for (long id = 1; id <= 30; id++) {
+            assertTrue(window.add(id));
+        }
+        assertEquals(30 + 5, window.limit(5));
+        window.slide();
+        assertEquals(20, window.afterId());
+        assertEquals(10 + 5, window.limit(5));
+
+        // ids in the window are still known, those below it are not tracked anymore
+        assertFalse(window.add(21));
+        assertTrue(window.add(20));
+    }
+
+    @Test
+    public void limitLeavesRoomForTheBatchNextToTheRereadIds() {
+        LogWindow window = new LogWindow(0, 100);
+        assertEquals(50, window.limit(50));
+        window.add(1);
+        window.add(2);
+        window.add(3);
+        window.slide();
+        assertEquals(53, window.limit(50));
+        window.add(1000);
+        window.slide();
+        assertEquals(51, window.limit(50));
+    }
+}
@@ -0,0 +1,102 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class NodeOccupancyTest {
+
+    private static final String PROCESS = "incident-process";
+
+    private static final int TYPE_ABORT = 2;
+
+    private static Map<String, Integer> counts(Object... nodeCounts) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < nodeCounts.length; i += 2) {
+            counts.put((String) nodeCounts[i], (Integer) nodeCounts[i + 1]);
+        }
+        return counts;
+    }
+
+    private static JsonObject openNodeInstance(long processInstanceId, String nodeInstanceId, String nodeId) {
+        return new JsonObject()
+                .put("processinstanceid", processInstanceId)
+                .put("processid", PROCESS)
+                .put("nodeinstanceid", nodeInstanceId)
+                .put("nodeid", nodeId);
+    }
+
+    @Test
+    public void exitClosesTheNodeInstanceItEntered() {
+        NodeOccupancy occupancy = new NodeOccupancy();
+        occupancy.add(1, PROCESS, "1", "_assign", NodeHistory.TYPE_ENTER);
+        assertEquals(counts("_assign", 1), occupancy.counts(PROCESS));
+        assertEquals(1, occupancy.instances(PROCESS));
+
+        occupancy.add(1, PROCESS, "1", "_assign", NodeHistory.TYPE_EXIT);
+        occupancy.add(1, PROCESS, "2", "_notify", NodeHistory.TYPE_ENTER);
+        assertEquals(counts("_notify", 1), occupancy.counts(PROCESS));
+
+        occupancy.add(1, PROCESS, "2", "_notify", TYPE_ABORT);
+        assertEquals(Collections.emptyMap(), occupancy.counts(PROCESS));
+        assertEquals(0, occupancy.instances(PROCESS));
+    }
+
+    @Test
+    public void countsTheSameNodeAcrossProcessInstances() {
+        NodeOccupancy occupancy = new NodeOccupancy();
+        occupancy.add(1, PROCESS, "1", "_assign", NodeHistory.TYPE_ENTER);
+        occupancy.add(2, PROCESS, "1", "_assign", NodeHistory.TYPE_ENTER);
+        occupancy.add(3, PROCESS, "1", "_assign", NodeHistory.TYPE_ENTER);
+        occupancy.add(3, PROCESS, "2", "_notify", NodeHistory.TYPE_ENTER);
+        occupancy.add(4, "other-process", "1", "_assign", NodeHistory.TYPE_ENTER);
+        assertEquals(counts("_assign", 3, "_notify", 1), occupancy.counts(PROCESS));
+        assertEquals(3, occupancy.instances(PROCESS));
+
+        occupancy.add(2, PROCESS, "1", "_assign", NodeHistory.TYPE_EXIT);
+        assertEquals(counts("_assign", 2, "_notify", 1), occupancy.counts(PROCESS));
+        assertEquals(2, occupancy.instances(PROCESS));
+        assertEquals(counts("_assign", 1), occupancy.counts("other-process"));
+    }
+
+    @Test
+    public void repeatedRowsAndUnknownExitsAreIgnored() {
+        NodeOccupancy occupancy = new NodeOccupancy();
+        occupancy.add(1, PROCESS, "1", "_assign", NodeHistory.TYPE_ENTER);
+        occupancy.add(1, PROCESS, "1", "_assign", NodeHistory.TYPE_ENTER);
+        occupancy.add(1, PROCESS, "9", "_assign", NodeHistory.TYPE_EXIT);
+        occupancy.add(2, PROCESS, "1", "_assign", NodeHistory.TYPE_EXIT);
+        assertEquals(counts("_assign", 1), occupancy.counts(PROCESS));
+    }
+
+    /**
+     * An exit folded before its enter (committed later than the safety lag) leaves a node instance open for good;
+     * the reseeded aggregate only holds what is open in the log.
+     */
+    @Test
+    public void reseedReplacesTheCountsFoldedIncrementally() {
+        NodeOccupancy occupancy = NodeOccupancy.fromOpenNodeInstances(new JsonArray()
+                .add(openNodeInstance(1, "1", "_assign"))
+                .add(openNodeInstance(2, "1", "_assign")));
+        assertEquals(counts("_assign", 2), occupancy.counts(PROCESS));
+
+        occupancy.add(3, PROCESS, "1", "_assign", NodeHistory.TYPE_EXIT);
+        occupancy.add(3, PROCESS, "1", "_assign", NodeHistory.TYPE_ENTER);
+        occupancy.add(1, PROCESS, "1", "_assign", NodeHistory.TYPE_EXIT);
+        assertEquals(counts("_assign", 2), occupancy.counts(PROCESS));
+
+        NodeOccupancy reseeded = NodeOccupancy.fromOpenNodeInstances(new JsonArray()
+                .add(openNodeInstance(2, "1", "_assign"))
+                .add(openNodeInstance(2, "2", "_notify")));
+        assertEquals(counts("_assign", 1, "_notify", 1), reseeded.counts(PROCESS));
+        assertEquals(1, reseeded.instances(PROCESS));
+        assertEquals(new JsonObject().put("processId", PROCESS).put("instances", 1L)
+                .put("nodes", new JsonObject().put("_assign", 1).put("_notify", 1)), reseeded.toJson(PROCESS));
+    }
+}
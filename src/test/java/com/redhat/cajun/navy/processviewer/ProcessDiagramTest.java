@@ -0,0 +1,138 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessDiagramTest {
+
+    private static final Pattern BACKGROUND_ID = Pattern.compile("id=\"([^\"?]+)\\?shapeType=BACKGROUND\"");
+
+    private static String svg;
+
+    private static ProcessDiagram diagram;
+
+    private static List<String> nodeIds;
+
+    @BeforeClass
+    public static void load() throws Exception {
+        try (InputStream is = ProcessDiagramTest.class.getClassLoader().getResourceAsStream("incident-process-svg.svg")) {
+            svg = new String(IOUtils.toByteArray(is), StandardCharsets.UTF_8);
+        }
+        diagram = ProcessDiagram.load("incident-process", svg.getBytes(StandardCharsets.UTF_8));
+        nodeIds = new ArrayList<>();
+        Matcher matcher = BACKGROUND_ID.matcher(svg);
+        while (matcher.find()) {
+            nodeIds.add(matcher.group(1));
+        }
+    }
+
+    /**
+     * The fixups as they were applied to every rendered image before diagrams were indexed.
+     */
+    private static String regexFixup(String image) {
+        return image.replaceFirst("<\\?.*\\?>", "")
+                .replaceFirst("width=\"[0-9]*\"", "width=\"1080\"")
+                .replaceFirst("height=\"[0-9]*\"", "height=\"auto\"");
+    }
+
+    @Test
+    public void rendersWithoutStateLikeTheRegexFixup() {
+        assertTrue(diagram.indexed());
+        assertEquals(regexFixup(svg), diagram.render(Collections.emptyList(), Collections.emptyList()));
+    }
+
+    @Test
+    public void dropsTheXmlPrologLikeTheRegexFixup() {
+        String withProlog = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>" + svg;
+        ProcessDiagram prologDiagram = ProcessDiagram.load("incident-process", withProlog.getBytes(StandardCharsets.UTF_8));
+        assertEquals(regexFixup(withProlog), prologDiagram.render(Collections.emptyList(), Collections.emptyList()));
+    }
+
+    @Test
+    public void rendersWellFormedXml() throws Exception {
+        int half = nodeIds.size() / 2;
+        Document document = parse(diagram.render(nodeIds.subList(0, half), nodeIds.subList(half, half + 2)));
+        assertEquals("svg", document.getDocumentElement().getTagName());
+    }
+
+    @Test
+    public void rendersHeatmapAsWellFormedXml() throws Exception {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < nodeIds.size(); i++) {
+            counts.put(nodeIds.get(i), i + 1);
+        }
+        Document document = parse(diagram.heatmap(counts));
+        assertEquals("svg", document.getDocumentElement().getTagName());
+        assertTrue(document.getElementsByTagName("text").getLength() >= nodeIds.size());
+    }
+
+    @Test
+    public void activeNodeThatIsAlsoCompletedKeepsItsFillWithARedBorder() throws Exception {
+        Map<String, Element> template = elementsById(parse(diagram.render(Collections.emptyList(), Collections.emptyList())));
+        for (String nodeId : nodeIds) {
+            List<String> both = Collections.singletonList(nodeId);
+            Map<String, Element> rendered = elementsById(parse(diagram.render(both, both)));
+
+            String background = nodeId + "?shapeType=BACKGROUND";
+            assertEquals(nodeId, template.get(background).getAttribute("fill"), rendered.get(background).getAttribute("fill"));
+
+            Element stroke = rendered.get(nodeId + "?shapeType=BORDER&renderType=STROKE");
+            Element fill = rendered.get(nodeId + "?shapeType=BORDER&renderType=FILL");
+            assertFalse(nodeId, stroke == null && fill == null);
+            if (stroke != null) {
+                assertEquals(nodeId, ProcessDiagram.ACTIVE_NODE_BORDER_COLOR, stroke.getAttribute("stroke"));
+                assertEquals(nodeId, ProcessDiagram.NODE_BORDER_WIDTH, stroke.getAttribute("stroke-width"));
+            } else {
+                assertEquals(nodeId, ProcessDiagram.ACTIVE_NODE_BORDER_COLOR, fill.getAttribute("fill"));
+            }
+        }
+    }
+
+    @Test
+    public void completedNodeIsGreyedOut() throws Exception {
+        String nodeId = nodeIds.get(0);
+        Map<String, Element> rendered = elementsById(parse(diagram.render(Collections.singletonList(nodeId), Collections.emptyList())));
+        Element background = rendered.get(nodeId + "?shapeType=BACKGROUND");
+        assertNotNull(background);
+        assertEquals(ProcessDiagram.COMPLETED_NODE_COLOR, background.getAttribute("fill"));
+    }
+
+    private static Document parse(String xml) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Map<String, Element> elementsById(Document document) {
+        Map<String, Element> elements = new HashMap<>();
+        NodeList all = document.getElementsByTagName("*");
+        for (int i = 0; i < all.getLength(); i++) {
+            Element element = (Element) all.item(i);
+            if (element.hasAttribute("id")) {
+                elements.put(element.getAttribute("id"), element);
+            }
+        }
+        return elements;
+    }
+}
@@ -0,0 +1,74 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.SingleSubject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<String, String> flight = new SingleFlight<>("test");
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private Single<String> execute(String key, Single<String> computation) {
+        return flight.execute(key, () -> {
+            calls.incrementAndGet();
+            return computation;
+        });
+    }
+
+    @Test
+    public void concurrentCallersShareOneComputation() {
+        SingleSubject<String> result = SingleSubject.create();
+        AtomicInteger subscriptions = new AtomicInteger();
+        Single<String> computation = result.doOnSubscribe(d -> subscriptions.incrementAndGet());
+        TestObserver<String> first = execute("a", computation).test();
+        TestObserver<String> second = execute("a", computation).test();
+        TestObserver<String> other = execute("b", Single.just("b")).test();
+        assertEquals(2, calls.get());
+        assertEquals(1, subscriptions.get());
+        first.assertNoValues();
+
+        result.onSuccess("a");
+        first.assertResult("a");
+        second.assertResult("a");
+        other.assertResult("b");
+    }
+
+    @Test
+    public void errorIsPassedToAllCallers() {
+        SingleSubject<String> computation = SingleSubject.create();
+        TestObserver<String> first = execute("a", computation).test();
+        TestObserver<String> second = execute("a", computation).test();
+
+        IllegalStateException error = new IllegalStateException("down");
+        computation.onError(error);
+        first.assertError(error);
+        second.assertError(error);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void keyIsForgottenOnceTheComputationCompletes() {
+        execute("a", Single.just("first")).test().assertResult("first");
+        execute("a", Single.just("second")).test().assertResult("second");
+        assertEquals(2, calls.get());
+
+        execute("a", Single.error(new IllegalStateException("down"))).test().assertError(IllegalStateException.class);
+        execute("a", Single.just("third")).test().assertResult("third");
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void computationStartsOnSubscription() {
+        Single<String> single = execute("a", Single.just("a"));
+        assertEquals(0, calls.get());
+        single.test().assertResult("a");
+        assertEquals(1, calls.get());
+    }
+}
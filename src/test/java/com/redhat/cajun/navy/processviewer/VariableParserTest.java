@@ -0,0 +1,116 @@
+package com.redhat.cajun.navy.processviewer;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class VariableParserTest {
+
+    private static final String MISSION = "Mission [id=7ea0c1a1-4b6e-4a5e-9b3f-2a1c3d4e5f60, incidentId=a1b2c3d4, responderId=12, "
+            + "responderLat=34.21225, responderLong=-77.87654, destinationLat=34.1706, destinationLong=-77.949, "
+            + "status=CREATED, route=null]";
+
+    private static final String INCIDENT = "Incident [id=a1b2c3d4, latitude=34.2321, longitude=-77.8791, numberOfPeople=3, "
+            + "medicalNeeded=true, reportedTime=1564489920000, victimName=Jane Doe, status=REPORTED]";
+
+    private static final String[] TOKENS = {"responderId=", "responderLat=", "responderLong=", "destinationLat=",
+            "destinationLong=", "latitude=", "longitude=", "12", ",", "-", "+", ".", "3.5", " ", "x", "=", "]",
+            "Mission [", "Incident [", "null", ", "};
+
+    private static final Pattern RESPONDER_ID = Pattern.compile(".*responderId=([0-9]*),");
+
+    private static final Pattern RESPONDER_LAT = Pattern.compile(".*responderLat=([-+]?[0-9.]*),");
+
+    private static final Pattern RESPONDER_LONG = Pattern.compile(".*responderLong=([-+]?[0-9.]*),");
+
+    private static final Pattern DESTINATION_LAT = Pattern.compile(".*destinationLat=([-+]?[0-9.]*),");
+
+    private static final Pattern DESTINATION_LONG = Pattern.compile(".*destinationLong=([-+]?[0-9.]*),");
+
+    private static final Pattern LATITUDE = Pattern.compile(".*latitude=([-+]?[0-9.]*),");
+
+    private static final Pattern LONGITUDE = Pattern.compile(".*longitude=([-+]?[0-9.]*),");
+
+    @Test
+    public void extractsMissionFields() {
+        VariableParser.Mission mission = VariableParser.mission(MISSION);
+        assertEquals("12", mission.responderId());
+        assertEquals("34.21225,-77.87654", mission.responderLocation());
+        assertEquals("34.1706,-77.949", mission.destinationLocation());
+    }
+
+    @Test
+    public void extractsIncidentLocation() {
+        assertEquals("34.2321,-77.8791", VariableParser.incident(INCIDENT).location());
+    }
+
+    @Test
+    public void missingVariablesYieldEmptyFields() {
+        assertEquals("", VariableParser.mission(null).responderId());
+        assertEquals("", VariableParser.mission(null).responderLocation());
+        assertEquals("", VariableParser.incident(null).location());
+        assertEquals("", VariableParser.incident("Incident [latitude=34.2321, id=1]").location());
+    }
+
+    /**
+     * The single pass must extract exactly what the regular expressions it replaced did.
+     */
+    @Test
+    public void matchesTheRegularExpressionsOnFuzzedInput() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int tokens = random.nextInt(20);
+            for (int j = 0; j < tokens; j++) {
+                sb.append(TOKENS[random.nextInt(TOKENS.length)]);
+            }
+            String text = sb.toString();
+            VariableParser.Mission mission = VariableParser.mission(text);
+            assertEquals(text, match(RESPONDER_ID, text), mission.responderId());
+            assertEquals(text, coordinates(RESPONDER_LAT, RESPONDER_LONG, text), mission.responderLocation());
+            assertEquals(text, coordinates(DESTINATION_LAT, DESTINATION_LONG, text), mission.destinationLocation());
+            assertEquals(text, coordinates(LATITUDE, LONGITUDE, text), VariableParser.incident(text).location());
+        }
+    }
+
+    @Test
+    public void formatsDatesWithZeroToNineFractionDigits() {
+        assertEquals("2019-07-11 13:20:15", VariableParser.formatDate("2019-07-11T13:20:15Z"));
+        assertEquals("2019-07-11 13:20:15", VariableParser.formatDate("2019-07-11T13:20:15.1Z"));
+        assertEquals("2019-07-11 13:20:15", VariableParser.formatDate("2019-07-11T13:20:15.123Z"));
+        assertEquals("2019-07-11 13:20:15", VariableParser.formatDate("2019-07-11T13:20:15.123456789Z"));
+        assertEquals("2019-07-11 13:20:15", VariableParser.formatDate("2019-07-11T13:20:15.123"));
+    }
+
+    @Test
+    public void formatsMalformedDatesAsEmpty() {
+        assertEquals("", VariableParser.formatDate(null));
+        assertEquals("", VariableParser.formatDate(""));
+        assertEquals("", VariableParser.formatDate("2019-07-11"));
+        assertEquals("", VariableParser.formatDate("2019-07-11 13:20:15"));
+        assertEquals("", VariableParser.formatDate("2019-07-1xT13:20:15Z"));
+        assertEquals("", VariableParser.formatDate("2019-07-11T13:20:15.Z"));
+        assertEquals("", VariableParser.formatDate("2019-07-11T13:20:15.1234567890Z"));
+        assertEquals("", VariableParser.formatDate("2019-07-11T13:20:15.123Zx"));
+        assertEquals("", VariableParser.formatDate("2019-07-11T13:20:15+02:00"));
+    }
+
+    /**
+     * Same result as the original <code>find()</code>: with a leading <code>.*</code>, a match found from a later
+     * position is also found from the start of a single-line input. Avoids retrying from every position.
+     */
+    private static String match(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        return matcher.lookingAt() ? matcher.group(1) : "";
+    }
+
+    private static String coordinates(Pattern patternLat, Pattern patternLon, String text) {
+        String lat = match(patternLat, text);
+        String lon = match(patternLon, text);
+        return lat.isEmpty() || lon.isEmpty() ? "" : lat + "," + lon;
+    }
+}